@@ -0,0 +1,339 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Hands log lines to a single writer thread that appends them in batches to long-lived file channels
+public class AsyncLogAppender {
+    public enum Backpressure {
+        BLOCK,       // producers wait for space in the queue
+        DROP_DEBUG,  // debug records are dropped when full, everything else waits
+        SPILL        // producers write the record to the overflow file themselves
+    }
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final int capacity;
+    private final int batchSize;
+    private final Backpressure backpressure;
+    private final String overflowFile;
+    private final Object spillLock = new Object();
+
+    private final ConcurrentLinkedQueue<Record> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final Thread writerThread;
+    private volatile boolean running = true;
+    private volatile boolean writerParked;
+
+    // Writer-thread state
+    private final Map<String, FileChannel> channels = new HashMap<>();
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private long cachedSecond = -1;
+    private String cachedTimestamp;
+
+    // Counters
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    public AsyncLogAppender(int capacity, int batchSize, Backpressure backpressure, String overflowFile) {
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.backpressure = backpressure;
+        this.overflowFile = overflowFile;
+        this.writerThread = new Thread(this::runWriter, "lms-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public void append(String fileName, String message, boolean debug) {
+        Record record = new Record(fileName, System.currentTimeMillis(), message);
+        // Once shut down (e.g. pools logging from their own shutdown hooks) records go straight to their file
+        if (!running) {
+            writeDirect(record);
+            return;
+        }
+        while (!tryReserve()) {
+            if (!running) {
+                writeDirect(record);
+                return;
+            }
+            if (debug && backpressure == Backpressure.DROP_DEBUG) {
+                dropped.incrementAndGet();
+                return;
+            }
+            if (backpressure == Backpressure.SPILL) {
+                spill(record);
+                return;
+            }
+            wakeWriter();
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        // Re-check after reserving: the writer's final drain waits for every reservation taken while it was running
+        if (!running) {
+            queueSize.decrementAndGet();
+            writeDirect(record);
+            return;
+        }
+        queue.offer(record);
+        enqueued.incrementAndGet();
+        wakeWriter();
+    }
+
+    // Lock-free bound on the queue length
+    private boolean tryReserve() {
+        int size;
+        do {
+            size = queueSize.get();
+            if (size >= capacity) {
+                return false;
+            }
+        } while (!queueSize.compareAndSet(size, size + 1));
+        return true;
+    }
+
+    private void wakeWriter() {
+        if (writerParked) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    // Overflow lines carry the file they were meant for, so error records can be told apart from info ones
+    private void spill(Record record) {
+        if (appendLine(overflowFile, "[" + Paths.get(record.fileName).getFileName() + "] ", record)) {
+            spilled.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void writeDirect(Record record) {
+        if (appendLine(record.fileName, "", record)) {
+            written.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private boolean appendLine(String fileName, String prefix, Record record) {
+        byte[] line = (TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(record.timestamp)) + " " + prefix + record.message
+                + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        synchronized (spillLock) {
+            try (FileChannel channel = FileChannel.open(Paths.get(fileName),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buf = ByteBuffer.wrap(line);
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+                return true;
+            } catch (IOException e) {
+                System.err.println("Failed to write log record to: " + fileName);
+                return false;
+            }
+        }
+    }
+
+    private void runWriter() {
+        while (running || !queue.isEmpty()) {
+            int drained = drainBatch();
+            if (drained == 0) {
+                writerParked = true;
+                if (queue.isEmpty() && running) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+                }
+                writerParked = false;
+            }
+        }
+        // Final drain: producers that reserved a slot before seeing running == false are still about to offer
+        while (queueSize.get() > 0) {
+            if (drainBatch() == 0) {
+                Thread.yield();
+            }
+        }
+        closeChannels();
+    }
+
+    // Take up to batchSize records, group them by file and write each group with one call
+    private int drainBatch() {
+        int count = 0;
+        Record record;
+        Record first = null;
+        Record last = null;
+        while (count < batchSize && (record = queue.poll()) != null) {
+            queueSize.decrementAndGet();
+            if (first == null) {
+                first = record;
+            } else {
+                last.next = record;
+            }
+            last = record;
+            count++;
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        // Records are chained in arrival order; write every file's records in that order
+        Map<String, Boolean> done = new HashMap<>();
+        for (Record head = first; head != null; head = head.next) {
+            if (done.containsKey(head.fileName)) {
+                continue;
+            }
+            done.put(head.fileName, Boolean.TRUE);
+            buffer.clear();
+            int lines = 0;
+            for (Record r = head; r != null; r = r.next) {
+                if (r.fileName.equals(head.fileName)) {
+                    encode(r);
+                    lines++;
+                }
+            }
+            buffer.flip();
+            writeToChannel(head.fileName, lines);
+        }
+        batches.incrementAndGet();
+        return count;
+    }
+
+    private void encode(Record record) {
+        long second = record.timestamp / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedTimestamp = TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(record.timestamp));
+        }
+        byte[] ts = cachedTimestamp.getBytes(StandardCharsets.UTF_8);
+        byte[] msg = record.message.getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(ts.length + 1 + msg.length + LINE_SEPARATOR.length);
+        buffer.put(ts).put((byte) ' ').put(msg).put(LINE_SEPARATOR);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (buffer.remaining() < extra) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + extra));
+            buffer.flip();
+            bigger.put(buffer);
+            buffer = bigger;
+        }
+    }
+
+    private void writeToChannel(String fileName, int lines) {
+        try {
+            FileChannel channel = channels.get(fileName);
+            if (channel == null) {
+                channel = FileChannel.open(Paths.get(fileName),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                channels.put(fileName, channel);
+            }
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            written.addAndGet(lines);
+        } catch (IOException e) {
+            dropped.addAndGet(lines);
+            System.err.println("Failed to write to log file: " + fileName);
+            e.printStackTrace();
+        } finally {
+            completed.addAndGet(lines);
+        }
+    }
+
+    // Wait until everything queued before this call has reached the files
+    public void flush(long timeoutMillis) {
+        long target = enqueued.get();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (completed.get() < target && System.currentTimeMillis() < deadline) {
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    // Truncate a log file that the writer may hold open
+    public void truncate(String fileName) throws IOException {
+        flush(TimeUnit.SECONDS.toMillis(5));
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(0);
+        }
+    }
+
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void closeChannels() {
+        for (Map.Entry<String, FileChannel> entry : channels.entrySet()) {
+            try {
+                entry.getValue().force(false);
+                entry.getValue().close();
+            } catch (IOException e) {
+                System.err.println("Failed to close log file: " + entry.getKey());
+            }
+        }
+        channels.clear();
+    }
+
+    // Counters
+    public int getQueuedCount() {
+        return queueSize.get();
+    }
+
+    public long getEnqueuedCount() {
+        return enqueued.get();
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getSpilledCount() {
+        return spilled.get();
+    }
+
+    public String getStats() {
+        return "queued=" + getQueuedCount() + ", enqueued=" + getEnqueuedCount() + ", written=" + getWrittenCount()
+                + ", dropped=" + getDroppedCount() + ", spilled=" + getSpilledCount() + ", batches=" + batches.get();
+    }
+
+    private static class Record {
+        private final String fileName;
+        private final long timestamp;
+        private final String message;
+        private Record next;
+
+        Record(String fileName, long timestamp, String message) {
+            this.fileName = fileName;
+            this.timestamp = timestamp;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per-book copy counters in front of the borrow transaction.
+// A borrow first takes a permit with a CAS on the book's counter; when the counter is zero the request is rejected
+// without touching the database, so a launch-day rush on a sold-out title no longer queues on the row lock.
+// Counters are loaded from books.available_copies and are only an admission filter: the conditional UPDATE stays
+// authoritative, and whenever it disagrees (or a transaction ends in an unknown state) the counter is dropped and
+// reloaded on the next request.
+public class AvailabilityGate {
+    private static final Logger logger = Logger.getInstance("database");
+
+    private final GateConfig config;
+    private final ConcurrentHashMap<Integer, Slot> slots = new ConcurrentHashMap<>();
+    // Bumped on every invalidation so that loads which raced with a write are not kept
+    private final AtomicLong invalidations = new AtomicLong();
+
+    // Statistics
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong reconciliations = new AtomicLong();
+    private final AtomicLong untracked = new AtomicLong();
+
+    public AvailabilityGate(GateConfig config) {
+        this.config = config;
+    }
+
+    public static AvailabilityGate fromSystemProperties() {
+        return new AvailabilityGate(GateConfig.fromSystemProperties());
+    }
+
+    // A reservation for one copy, or null if the title is known to be sold out. Every reservation must be finished.
+    public Reservation reserve(int bookId) {
+        if (!config.enabled) {
+            return Reservation.UNTRACKED;
+        }
+        Slot slot = slots.get(bookId);
+        if (slot == null || (slot.isSoldOut() && slot.isStale(config.soldOutRecheckMillis))) {
+            slot = load(bookId, slot);
+            if (slot == null) {
+                untracked.incrementAndGet();
+                return Reservation.UNTRACKED;
+            }
+        }
+        if (!slot.tryAcquire()) {
+            rejected.incrementAndGet();
+            return null;
+        }
+        admitted.incrementAndGet();
+        return new Reservation(this, bookId, slot);
+    }
+
+    // A copy came back through a committed return
+    public void copyReturned(int bookId) {
+        Slot slot = slots.get(bookId);
+        if (slot != null) {
+            slot.permits.incrementAndGet();
+        }
+    }
+
+    // Call after any other committed write to the book's copies
+    public void invalidate(int bookId) {
+        invalidations.incrementAndGet();
+        slots.remove(bookId);
+    }
+
+    public void clear() {
+        invalidations.incrementAndGet();
+        slots.clear();
+    }
+
+    private void reconcile(int bookId, Slot slot) {
+        reconciliations.incrementAndGet();
+        invalidations.incrementAndGet();
+        slots.remove(bookId, slot);
+    }
+
+    // Reads the current count; returns null (pass-through) when the book cannot be loaded or the map is full
+    private Slot load(int bookId, Slot previous) {
+        // A sold-out counter with reservations still in flight must not be refreshed: the database does not yet
+        // reflect those borrows, so a reload would hand their copies out a second time
+        if (previous != null && previous.inFlight.get() > 0) {
+            return previous;
+        }
+        if (previous == null && slots.size() >= config.maxTracked) {
+            return null;
+        }
+        long stamp = invalidations.get();
+        Integer available = queryAvailableCopies(bookId);
+        if (available == null) {
+            return null;
+        }
+        loads.incrementAndGet();
+        Slot loaded = new Slot(available);
+        if (stamp != invalidations.get()) {
+            // A write landed while loading; use this count for the current request only
+            return loaded;
+        }
+        if (previous == null) {
+            Slot raced = slots.putIfAbsent(bookId, loaded);
+            return raced != null ? raced : loaded;
+        }
+        return slots.replace(bookId, previous, loaded) ? loaded : slots.getOrDefault(bookId, loaded);
+    }
+
+    private Integer queryAvailableCopies(int bookId) {
+        String sql = "SELECT available_copies FROM books WHERE id = ?";
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, bookId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        } catch (SQLException e) {
+            logger.error("Error loading availability for book ID: " + bookId, e);
+            return null;
+        }
+    }
+
+    // Statistics
+    public int getTrackedCount() {
+        return slots.size();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public String getStats() {
+        return String.format("tracked=%d, admitted=%d, rejectedInstantly=%d, loads=%d, reconciliations=%d, " +
+                        "untracked=%d", slots.size(), admitted.get(), rejected.get(), loads.get(),
+                reconciliations.get(), untracked.get());
+    }
+
+    public void logStats() {
+        logger.info("Availability gate: {}", getStats());
+    }
+
+    private static class Slot {
+        private final AtomicInteger permits;
+        // Reservations taken from this counter whose transaction has not finished yet
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final long loadedAt = System.currentTimeMillis();
+
+        Slot(int permits) {
+            this.permits = new AtomicInteger(Math.max(0, permits));
+        }
+
+        boolean tryAcquire() {
+            while (true) {
+                int current = permits.get();
+                if (current <= 0) {
+                    return false;
+                }
+                if (permits.compareAndSet(current, current - 1)) {
+                    inFlight.incrementAndGet();
+                    return true;
+                }
+            }
+        }
+
+        boolean isSoldOut() {
+            return permits.get() <= 0;
+        }
+
+        boolean isStale(long maxAgeMillis) {
+            return System.currentTimeMillis() - loadedAt > maxAgeMillis;
+        }
+    }
+
+    public static class Reservation {
+        // Handed out when the gate cannot track the book; the database decides alone
+        static final Reservation UNTRACKED = new Reservation(null, 0, null);
+
+        private final AvailabilityGate gate;
+        private final int bookId;
+        private final Slot slot;
+
+        Reservation(AvailabilityGate gate, int bookId, Slot slot) {
+            this.gate = gate;
+            this.bookId = bookId;
+            this.slot = slot;
+        }
+
+        // Settle the permit with the transaction's result: a committed borrow keeps it, a borrow refused for the
+        // member's sake never touched the book and gives it back, and anything else reloads the counter
+        public void finish(LoanOutcome outcome) {
+            if (slot == null) {
+                return;
+            }
+            if (outcome.getStatus() == LoanOutcome.Status.LIMIT_REACHED) {
+                slot.permits.incrementAndGet();
+            }
+            slot.inFlight.decrementAndGet();
+            if (!outcome.isSuccess() && outcome.getStatus() != LoanOutcome.Status.LIMIT_REACHED) {
+                gate.reconcile(bookId, slot);
+            }
+        }
+    }
+
+    public static class GateConfig {
+        boolean enabled = true;
+        int maxTracked = 100_000;
+        long soldOutRecheckMillis = 1000;
+
+        // Each setting can be overridden with -Dlms.availability.<name>=<value>
+        static GateConfig fromSystemProperties() {
+            GateConfig config = new GateConfig();
+            config.enabled = Boolean.parseBoolean(System.getProperty("lms.availability.enabled", String.valueOf(config.enabled)));
+            config.maxTracked = Math.max(0, Integer.getInteger("lms.availability.maxTracked", config.maxTracked));
+            config.soldOutRecheckMillis = Math.max(0, Long.getLong("lms.availability.soldOutRecheckMillis",
+                    config.soldOutRecheckMillis));
+            return config;
+        }
+    }
+}
@@ -41,10 +41,29 @@ public class Book {
         this.dateAdded = new java.util.Date();
     }
 
+    public Book(Book other) {
+        this.id = other.id;
+        this.title = other.title;
+        this.author = other.author;
+        this.publisher = other.publisher;
+        this.year = other.year;
+        this.available = other.available;
+        this.isbn = other.isbn;
+        this.category = other.category;
+        this.totalCopies = other.totalCopies;
+        this.availableCopies = other.availableCopies;
+        this.location = other.location;
+        this.dateAdded = other.dateAdded;
+    }
+
     // Getters and setters
     public int getId() {
         return id;
     }
+    
+    public void setId(int id) {
+        this.id = id;
+    }
 
     public String getTitle() {
         return title;
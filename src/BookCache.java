@@ -0,0 +1,297 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Bounded cache of books by id using W-TinyLFU eviction.
+// New entries land in a small LRU window; when the window overflows, its oldest entry is only admitted to the
+// main segmented LRU if a frequency sketch says it is used more often than the main region's eviction victim.
+// This keeps popular titles resident even when a scan touches many books once.
+public class BookCache {
+    private static final Logger logger = Logger.getInstance("database");
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final CacheConfig config;
+    private final int windowCapacity;
+    private final int protectedCapacity;
+    private final Map<Integer, Node> nodes = new HashMap<>();
+    // Sentinels of the three LRU lists; head.next is the most recently used entry
+    private final Node[] heads = {new Node(0, null, 0), new Node(0, null, 0), new Node(0, null, 0)};
+    private final int[] sizes = new int[3];
+    private final FrequencySketch sketch;
+
+    // Bumped on every invalidation so that loads which raced with a write are not cached
+    private long invalidations;
+
+    // Statistics, guarded by this
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long rejectedLoads;
+
+    public BookCache(CacheConfig config) {
+        this.config = config;
+        this.windowCapacity = Math.max(1, config.maxSize / 100);
+        this.protectedCapacity = Math.max(0, (config.maxSize - windowCapacity) * 4 / 5);
+        this.sketch = new FrequencySketch(Math.max(16, config.maxSize));
+        for (Node head : heads) {
+            head.prev = head;
+            head.next = head;
+        }
+    }
+
+    public boolean isEnabled() {
+        return config.maxSize > 0;
+    }
+
+    // A copy of the cached book, or null on a miss. Callers may modify the copy freely.
+    public synchronized Book get(int bookId) {
+        if (!isEnabled()) {
+            return null;
+        }
+        sketch.increment(bookId);
+        Node node = nodes.get(bookId);
+        if (node == null) {
+            misses++;
+            return null;
+        }
+        if (config.ttlMillis > 0 && System.currentTimeMillis() - node.loadedAt > config.ttlMillis) {
+            unlink(node);
+            nodes.remove(bookId);
+            expirations++;
+            misses++;
+            return null;
+        }
+        hits++;
+        onAccess(node);
+        return new Book(node.book);
+    }
+
+    // Take before reading from the database; pass to put so a concurrent write wins over the stale read
+    public synchronized long loadStamp() {
+        return invalidations;
+    }
+
+    public synchronized void put(Book book, long stamp) {
+        if (!isEnabled() || book == null) {
+            return;
+        }
+        if (stamp != invalidations) {
+            rejectedLoads++;
+            return;
+        }
+        Node node = nodes.get(book.getId());
+        if (node != null) {
+            node.book = new Book(book);
+            node.loadedAt = System.currentTimeMillis();
+            onAccess(node);
+            return;
+        }
+        node = new Node(book.getId(), new Book(book), System.currentTimeMillis());
+        nodes.put(node.key, node);
+        linkFirst(WINDOW, node);
+        if (sizes[WINDOW] > windowCapacity) {
+            admit(last(WINDOW));
+        }
+    }
+
+    // Call after a write to the book commits
+    public synchronized void invalidate(int bookId) {
+        invalidations++;
+        Node node = nodes.remove(bookId);
+        if (node != null) {
+            unlink(node);
+        }
+    }
+
+    public synchronized void clear() {
+        invalidations++;
+        nodes.clear();
+        for (int queue = 0; queue < heads.length; queue++) {
+            heads[queue].prev = heads[queue];
+            heads[queue].next = heads[queue];
+            sizes[queue] = 0;
+        }
+    }
+
+    private void onAccess(Node node) {
+        unlink(node);
+        if (node.queue == PROBATION) {
+            // A second hit promotes the entry; the protected segment's oldest entry drops back to probation
+            linkFirst(PROTECTED, node);
+            if (sizes[PROTECTED] > protectedCapacity) {
+                Node demoted = last(PROTECTED);
+                unlink(demoted);
+                linkFirst(PROBATION, demoted);
+            }
+        } else {
+            linkFirst(node.queue, node);
+        }
+    }
+
+    // Move the window's oldest entry into the main region, or drop it if it is less popular than the victim there
+    private void admit(Node candidate) {
+        unlink(candidate);
+        if (config.maxSize <= windowCapacity) {
+            nodes.remove(candidate.key);
+            evictions++;
+            return;
+        }
+        if (sizes[PROBATION] + sizes[PROTECTED] < config.maxSize - windowCapacity) {
+            linkFirst(PROBATION, candidate);
+            return;
+        }
+        Node victim = sizes[PROBATION] > 0 ? last(PROBATION) : last(PROTECTED);
+        int candidateFrequency = sketch.frequency(candidate.key);
+        int victimFrequency = sketch.frequency(victim.key);
+        // A little randomness keeps an attacker-chosen key from holding the victim slot forever
+        boolean admitted = candidateFrequency > victimFrequency
+                || (candidateFrequency >= 6 && candidateFrequency == victimFrequency
+                && ThreadLocalRandom.current().nextInt(128) == 0);
+        Node evicted = admitted ? victim : candidate;
+        if (admitted) {
+            unlink(victim);
+            linkFirst(PROBATION, candidate);
+        }
+        nodes.remove(evicted.key);
+        evictions++;
+    }
+
+    private Node last(int queue) {
+        return heads[queue].prev;
+    }
+
+    private void linkFirst(int queue, Node node) {
+        Node head = heads[queue];
+        node.queue = queue;
+        node.prev = head;
+        node.next = head.next;
+        head.next.prev = node;
+        head.next = node;
+        sizes[queue]++;
+    }
+
+    private void unlink(Node node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+        sizes[node.queue]--;
+    }
+
+    // Statistics
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized double getHitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+
+    public synchronized String getStats() {
+        return String.format("size=%d/%d, hits=%d, misses=%d, hitRatio=%.1f%%, evictions=%d, expirations=%d, " +
+                        "staleLoadsDropped=%d", nodes.size(), config.maxSize, hits, misses, getHitRatio() * 100,
+                evictions, expirations, rejectedLoads);
+    }
+
+    public void logStats() {
+        logger.info("Book cache: {}", getStats());
+    }
+
+    private static class Node {
+        private final int key;
+        private Book book;
+        private long loadedAt;
+        private int queue;
+        private Node prev;
+        private Node next;
+
+        Node(int key, Book book, long loadedAt) {
+            this.key = key;
+            this.book = book;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    // Count-min sketch of 4-bit counters, halved periodically so old popularity fades
+    private static class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int[] SEEDS = {0x97cb3127, 0xb4b82e2d, 0x5d6a1f37, 0x3c5a9f21};
+
+        private final byte[] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maximumSize) {
+            int width = Integer.highestOneBit(Math.max(16, maximumSize) - 1) << 1;
+            this.counters = new byte[DEPTH * width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * maximumSize;
+        }
+
+        void increment(int key) {
+            boolean added = false;
+            for (int row = 0; row < DEPTH; row++) {
+                int index = indexOf(key, row);
+                if (counters[index] < 15) {
+                    counters[index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(int key) {
+            int frequency = 15;
+            for (int row = 0; row < DEPTH; row++) {
+                frequency = Math.min(frequency, counters[indexOf(key, row)]);
+            }
+            return frequency;
+        }
+
+        private int indexOf(int key, int row) {
+            int hash = (key + SEEDS[row]) * 0x9E3779B9;
+            hash ^= hash >>> 16;
+            return row * (mask + 1) + (hash & mask);
+        }
+
+        private void reset() {
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = (byte) (counters[i] >>> 1);
+            }
+            additions /= 2;
+        }
+    }
+
+    public static class CacheConfig {
+        int maxSize = 10_000;
+        long ttlMillis = 5 * 60_000;
+
+        // Each setting can be overridden with -Dlms.bookCache.<name>=<value>; maxSize=0 disables the cache
+        static CacheConfig fromSystemProperties() {
+            CacheConfig config = new CacheConfig();
+            config.maxSize = Math.max(0, Integer.getInteger("lms.bookCache.maxSize", config.maxSize));
+            config.ttlMillis = Long.getLong("lms.bookCache.ttlMillis", config.ttlMillis);
+            return config;
+        }
+    }
+}
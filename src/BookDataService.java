@@ -0,0 +1,119 @@
+import javax.swing.SwingUtilities;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+// Runs database work for the GUI on background threads and hands results back on the Event Dispatch Thread
+public class BookDataService {
+    private static final Logger logger = Logger.getInstance("gui");
+
+    private final ExecutorService executor;
+    // Latest task per key; submitting a new task under the same key cancels the older one
+    private final Map<String, Task<?>> latestByKey = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile IntConsumer busyListener;
+
+    public BookDataService(int threads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "lms-data-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Only call from work submitted to this service: the first call runs schema migrations
+    public DatabaseManager getDatabase() {
+        return DatabaseManager.getInstance();
+    }
+
+    // Called on the EDT with the number of requests still running whenever it changes
+    public void setBusyListener(IntConsumer busyListener) {
+        this.busyListener = busyListener;
+    }
+
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    // Writes should pass a null key so they are never cancelled by a later request
+    public <T> Future<T> submit(String key, Callable<T> work, Consumer<T> onSuccess, Consumer<Exception> onFailure) {
+        Task<T> task = new Task<>(key, work, onSuccess, onFailure);
+        changeInFlight(1);
+        if (key != null) {
+            Task<?> superseded = latestByKey.put(key, task);
+            if (superseded != null) {
+                superseded.cancel(true);
+            }
+        }
+        executor.execute(task);
+        return task;
+    }
+
+    public void cancel(String key) {
+        Task<?> task = latestByKey.remove(key);
+        if (task != null) {
+            task.cancel(true);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void changeInFlight(int delta) {
+        int count = inFlight.addAndGet(delta);
+        IntConsumer listener = busyListener;
+        if (listener != null) {
+            SwingUtilities.invokeLater(() -> listener.accept(count));
+        }
+    }
+
+    private class Task<T> extends FutureTask<T> {
+        private final String key;
+        private final Consumer<T> onSuccess;
+        private final Consumer<Exception> onFailure;
+
+        Task(String key, Callable<T> work, Consumer<T> onSuccess, Consumer<Exception> onFailure) {
+            super(work);
+            this.key = key;
+            this.onSuccess = onSuccess;
+            this.onFailure = onFailure;
+        }
+
+        // Runs once the task completes or is cancelled, whichever happens first
+        @Override
+        protected void done() {
+            changeInFlight(-1);
+            if (isCancelled()) {
+                return;
+            }
+            if (key != null && !latestByKey.remove(key, this)) {
+                // A newer request with the same key has already been submitted
+                return;
+            }
+            try {
+                T result = get();
+                if (onSuccess != null) {
+                    SwingUtilities.invokeLater(() -> onSuccess.accept(result));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                logger.error("Background request failed", cause);
+                if (onFailure != null) {
+                    SwingUtilities.invokeLater(() -> onFailure.accept(cause));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,658 @@
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+// In-memory inverted index over the searchable book fields.
+// Query syntax: terms are ANDed, OR separates alternatives, "quoted text" is a phrase,
+// and field:term or field:"phrase" restricts a clause to title, author, publisher, isbn or category.
+public class BookSearchIndex {
+    public enum Field {
+        TITLE(3.0f), AUTHOR(2.0f), PUBLISHER(1.0f), ISBN(4.0f), CATEGORY(1.0f);
+
+        final float boost;
+        final int mask;
+
+        Field(float boost) {
+            this.boost = boost;
+            this.mask = 1 << ordinal();
+        }
+
+        static Field parse(String name) {
+            for (Field field : values()) {
+                if (field.name().equalsIgnoreCase(name)) {
+                    return field;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final Field[] FIELDS = Field.values();
+    private static final int FIELD_BITS = 5;
+    private static final int FIELD_MASK = (1 << FIELD_BITS) - 1;
+    private static final float PHRASE_BOOST = 1.5f;
+    // Score multiplier applied once per edit in fuzzy matches
+    private static final float FUZZY_PENALTY = 0.4f;
+    private static final int FUZZY_CANDIDATES_PER_WORD = 16;
+    private static final int FUZZY_FIELDS = Field.TITLE.mask | Field.AUTHOR.mask;
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private final List<String> terms = new ArrayList<>();
+    private final List<Postings> postings = new ArrayList<>();
+    // Per-document token ids for each field, used for phrase checks and removal
+    private final Map<Integer, int[][]> forward = new HashMap<>();
+    // Title and author words, for typo-tolerant lookups
+    private final TrigramTermIndex trigrams = new TrigramTermIndex(terms);
+    private final BitSet trigramIndexed = new BitSet();
+
+    // Ids changed incrementally while a bulk build is running; the scan must not overwrite them
+    private Set<Integer> touchedDuringBuild;
+    private volatile boolean ready;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return forward.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void beginBuild() {
+        lock.writeLock().lock();
+        try {
+            ready = false;
+            touchedDuringBuild = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Add a row read by the startup scan, unless it was changed since the scan began
+    public void addFromScan(Book book) {
+        lock.writeLock().lock();
+        try {
+            if (touchedDuringBuild == null || !touchedDuringBuild.contains(book.getId())) {
+                removeLocked(book.getId());
+                addLocked(book);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void finishBuild() {
+        lock.writeLock().lock();
+        try {
+            touchedDuringBuild = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Insert or replace a book's entry
+    public void index(Book book) {
+        lock.writeLock().lock();
+        try {
+            touch(book.getId());
+            removeLocked(book.getId());
+            addLocked(book);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int bookId) {
+        lock.writeLock().lock();
+        try {
+            touch(bookId);
+            removeLocked(bookId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void touch(int bookId) {
+        if (touchedDuringBuild != null) {
+            touchedDuringBuild.add(bookId);
+        }
+    }
+
+    private void addLocked(Book book) {
+        int docId = book.getId();
+        int[][] fieldTerms = new int[FIELDS.length][];
+        // term id -> field mask in the low bits, term frequency above them
+        Map<Integer, Integer> termMeta = new HashMap<>();
+        for (Field field : FIELDS) {
+            List<String> tokens = tokenize(fieldValue(book, field), field);
+            int[] ids = new int[tokens.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = termIdForIndexing(tokens.get(i));
+                if ((field.mask & FUZZY_FIELDS) != 0 && !trigramIndexed.get(ids[i])) {
+                    trigramIndexed.set(ids[i]);
+                    trigrams.add(ids[i]);
+                }
+                Integer meta = termMeta.get(ids[i]);
+                termMeta.put(ids[i], ((meta == null ? 0 : meta) | field.mask) + (1 << FIELD_BITS));
+            }
+            fieldTerms[field.ordinal()] = ids;
+        }
+        for (Map.Entry<Integer, Integer> entry : termMeta.entrySet()) {
+            postings.get(entry.getKey()).add(docId, entry.getValue());
+        }
+        forward.put(docId, fieldTerms);
+    }
+
+    private void removeLocked(int docId) {
+        int[][] fieldTerms = forward.remove(docId);
+        if (fieldTerms == null) {
+            return;
+        }
+        for (int[] ids : fieldTerms) {
+            for (int id : ids) {
+                postings.get(id).remove(docId);
+            }
+        }
+    }
+
+    private int termIdForIndexing(String term) {
+        Integer id = termIds.get(term);
+        if (id == null) {
+            id = terms.size();
+            termIds.put(term, id);
+            terms.add(term);
+            postings.add(new Postings());
+        }
+        return id;
+    }
+
+    private static String fieldValue(Book book, Field field) {
+        switch (field) {
+            case TITLE: return book.getTitle();
+            case AUTHOR: return book.getAuthor();
+            case PUBLISHER: return book.getPublisher();
+            case ISBN: return book.getIsbn();
+            case CATEGORY: return book.getCategory();
+            default: return null;
+        }
+    }
+
+    // Lower-case, strip accents and split on anything that is not a letter or digit.
+    // ISBNs are kept as a single token with separators removed.
+    static List<String> tokenize(String text, Field field) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        String normalized = normalize(text);
+        if (field == Field.ISBN) {
+            String isbn = normalizeIsbn(normalized);
+            if (!isbn.isEmpty()) {
+                tokens.add(isbn);
+            }
+            return tokens;
+        }
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    static String normalize(String text) {
+        // Plain ASCII needs no accent stripping
+        boolean ascii = true;
+        for (int i = 0; i < text.length() && ascii; i++) {
+            ascii = text.charAt(i) < 0x80;
+        }
+        if (ascii) {
+            return text.toLowerCase(Locale.ROOT);
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private static String normalizeIsbn(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    // Searching
+
+    // Ranked book ids for the query, best first; limit <= 0 returns every match
+    public int[] search(String query, int limit) {
+        List<List<Clause>> disjuncts = parse(query);
+        lock.readLock().lock();
+        try {
+            ScoredDocs result = null;
+            for (List<Clause> conjunction : disjuncts) {
+                ScoredDocs matches = null;
+                for (Clause clause : conjunction) {
+                    ScoredDocs docs = evaluate(clause);
+                    matches = matches == null ? docs : ScoredDocs.intersect(matches, docs);
+                    if (matches.size == 0) {
+                        break;
+                    }
+                }
+                if (matches != null) {
+                    result = result == null ? matches : ScoredDocs.union(result, matches);
+                }
+            }
+            return result == null ? new int[0] : result.topK(limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private ScoredDocs evaluate(Clause clause) {
+        if (clause.phrase) {
+            return evaluatePhrase(clause);
+        }
+        // A bare word may split into several tokens ("o'brien"); all of them must match
+        ScoredDocs docs = null;
+        for (String token : clause.tokens) {
+            ScoredDocs termDocs = termDocs(token, clause.field);
+            docs = docs == null ? termDocs : ScoredDocs.intersect(docs, termDocs);
+        }
+        if (docs == null) {
+            docs = new ScoredDocs(0);
+        }
+        // Unscoped text that looks like an ISBN also matches the normalized ISBN token
+        if (clause.field == null && clause.isbnToken != null) {
+            docs = ScoredDocs.union(docs, termDocs(clause.isbnToken, Field.ISBN));
+        }
+        return docs;
+    }
+
+    private ScoredDocs termDocs(String term, Field field) {
+        Integer termId = termIds.get(term);
+        if (termId == null) {
+            return new ScoredDocs(0);
+        }
+        Postings list = postings.get(termId);
+        ScoredDocs docs = new ScoredDocs(list.size);
+        float idf = (float) Math.log(1.0 + (double) forward.size() / Math.max(1, list.size));
+        for (int i = 0; i < list.size; i++) {
+            int meta = list.meta[i];
+            int fields = meta & FIELD_MASK;
+            if (field != null && (fields & field.mask) == 0) {
+                continue;
+            }
+            int tf = meta >>> FIELD_BITS;
+            float boost = field != null ? field.boost : bestBoost(fields);
+            docs.append(list.docs[i], idf * boost * (tf * 2.2f) / (tf + 1.2f));
+        }
+        return docs;
+    }
+
+    // Typo-tolerant search over titles and authors. Each query word matches the indexed words
+    // within its edit budget; every word must match, and each edit lowers the score.
+    // Falls back to matching any word when no book matches all of them.
+    public int[] searchFuzzy(String query, int limit) {
+        List<String> words = new ArrayList<>();
+        for (List<Clause> conjunction : parse(query)) {
+            for (Clause clause : conjunction) {
+                words.addAll(clause.tokens);
+            }
+        }
+        if (words.isEmpty()) {
+            return new int[0];
+        }
+        lock.readLock().lock();
+        try {
+            ScoredDocs all = null;
+            ScoredDocs any = null;
+            for (String word : words) {
+                ScoredDocs docs = new ScoredDocs(0);
+                for (TrigramTermIndex.Match match : trigrams.lookup(word, FUZZY_CANDIDATES_PER_WORD)) {
+                    docs = ScoredDocs.union(docs, fuzzyTermDocs(match.termId, (float) Math.pow(FUZZY_PENALTY, match.distance)));
+                }
+                all = all == null ? docs : ScoredDocs.intersect(all, docs);
+                any = any == null ? docs : ScoredDocs.union(any, docs);
+            }
+            return (all.size > 0 ? all : any).topK(limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private ScoredDocs fuzzyTermDocs(int termId, float factor) {
+        Postings list = postings.get(termId);
+        ScoredDocs docs = new ScoredDocs(list.size);
+        float idf = (float) Math.log(1.0 + (double) forward.size() / Math.max(1, list.size));
+        for (int i = 0; i < list.size; i++) {
+            int meta = list.meta[i];
+            int fields = meta & FUZZY_FIELDS;
+            if (fields == 0) {
+                continue;
+            }
+            int tf = meta >>> FIELD_BITS;
+            docs.append(list.docs[i], factor * idf * bestBoost(fields) * (tf * 2.2f) / (tf + 1.2f));
+        }
+        return docs;
+    }
+
+    private static float bestBoost(int fields) {
+        float best = 0;
+        for (Field field : FIELDS) {
+            if ((fields & field.mask) != 0 && field.boost > best) {
+                best = field.boost;
+            }
+        }
+        return best;
+    }
+
+    private ScoredDocs evaluatePhrase(Clause clause) {
+        ScoredDocs candidates = null;
+        int[] phraseIds = new int[clause.tokens.size()];
+        for (int i = 0; i < phraseIds.length; i++) {
+            Integer termId = termIds.get(clause.tokens.get(i));
+            if (termId == null) {
+                return new ScoredDocs(0);
+            }
+            phraseIds[i] = termId;
+            ScoredDocs termDocs = termDocs(clause.tokens.get(i), clause.field);
+            candidates = candidates == null ? termDocs : ScoredDocs.intersect(candidates, termDocs);
+        }
+        if (candidates == null) {
+            return new ScoredDocs(0);
+        }
+        ScoredDocs docs = new ScoredDocs(candidates.size);
+        for (int i = 0; i < candidates.size; i++) {
+            int[][] fieldTerms = forward.get(candidates.docs[i]);
+            if (containsPhrase(fieldTerms, phraseIds, clause.field)) {
+                docs.append(candidates.docs[i], candidates.scores[i] * PHRASE_BOOST);
+            }
+        }
+        return docs;
+    }
+
+    private static boolean containsPhrase(int[][] fieldTerms, int[] phraseIds, Field field) {
+        for (Field f : FIELDS) {
+            if (field != null && f != field) {
+                continue;
+            }
+            int[] ids = fieldTerms[f.ordinal()];
+            outer:
+            for (int start = 0; start + phraseIds.length <= ids.length; start++) {
+                for (int j = 0; j < phraseIds.length; j++) {
+                    if (ids[start + j] != phraseIds[j]) {
+                        continue outer;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Split the query into OR-separated groups of clauses
+    static List<List<Clause>> parse(String query) {
+        List<List<Clause>> disjuncts = new ArrayList<>();
+        List<Clause> current = new ArrayList<>();
+        int i = 0;
+        int length = query == null ? 0 : query.length();
+        while (i < length) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            // Optional field prefix
+            Field field = null;
+            int colon = -1;
+            for (int j = i; j < length && !Character.isWhitespace(query.charAt(j)) && query.charAt(j) != '"'; j++) {
+                if (query.charAt(j) == ':') {
+                    colon = j;
+                    break;
+                }
+            }
+            if (colon > i) {
+                field = Field.parse(query.substring(i, colon));
+                if (field != null) {
+                    i = colon + 1;
+                }
+            }
+
+            String raw;
+            boolean phrase = i < length && query.charAt(i) == '"';
+            if (phrase) {
+                int end = query.indexOf('"', i + 1);
+                if (end < 0) {
+                    end = length;
+                }
+                raw = query.substring(i + 1, end);
+                i = Math.min(length, end + 1);
+            } else {
+                int end = i;
+                while (end < length && !Character.isWhitespace(query.charAt(end))) {
+                    end++;
+                }
+                raw = query.substring(i, end);
+                i = end;
+            }
+
+            if (!phrase && field == null && raw.equals("OR")) {
+                if (!current.isEmpty()) {
+                    disjuncts.add(current);
+                    current = new ArrayList<>();
+                }
+                continue;
+            }
+            if (!phrase && field == null && raw.equals("AND")) {
+                continue;
+            }
+
+            Clause clause = new Clause(field, phrase, raw);
+            if (!clause.tokens.isEmpty() || clause.isbnToken != null) {
+                current.add(clause);
+            }
+        }
+        if (!current.isEmpty()) {
+            disjuncts.add(current);
+        }
+        return disjuncts;
+    }
+
+    static class Clause {
+        final Field field;
+        final boolean phrase;
+        final List<String> tokens;
+        final String isbnToken;
+
+        Clause(Field field, boolean phrase, String raw) {
+            this.field = field;
+            this.phrase = phrase;
+            this.tokens = tokenize(raw, field == Field.ISBN ? Field.ISBN : Field.TITLE);
+            String isbn = normalizeIsbn(normalize(raw));
+            this.isbnToken = field == null && !isbn.isEmpty() && isbn.chars().anyMatch(Character::isDigit) ? isbn : null;
+        }
+    }
+
+    // Sorted posting list of document ids with packed field mask and term frequency
+    private static class Postings {
+        private int[] docs = new int[4];
+        private int[] meta = new int[4];
+        private int size;
+
+        void add(int docId, int docMeta) {
+            // Ids usually arrive in ascending order, so appending is the common case
+            int index = size == 0 || docs[size - 1] < docId ? -(size + 1) : Arrays.binarySearch(docs, 0, size, docId);
+            if (index >= 0) {
+                meta[index] = docMeta;
+                return;
+            }
+            index = -(index + 1);
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                meta = Arrays.copyOf(meta, size * 2);
+            }
+            System.arraycopy(docs, index, docs, index + 1, size - index);
+            System.arraycopy(meta, index, meta, index + 1, size - index);
+            docs[index] = docId;
+            meta[index] = docMeta;
+            size++;
+        }
+
+        void remove(int docId) {
+            int index = Arrays.binarySearch(docs, 0, size, docId);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(docs, index + 1, docs, index, size - index - 1);
+            System.arraycopy(meta, index + 1, meta, index, size - index - 1);
+            size--;
+        }
+    }
+
+    // Doc ids in ascending order with a running relevance score
+    private static class ScoredDocs {
+        private int[] docs;
+        private float[] scores;
+        private int size;
+
+        ScoredDocs(int capacity) {
+            docs = new int[Math.max(capacity, 1)];
+            scores = new float[docs.length];
+        }
+
+        void append(int docId, float score) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            docs[size] = docId;
+            scores[size] = score;
+            size++;
+        }
+
+        static ScoredDocs intersect(ScoredDocs a, ScoredDocs b) {
+            ScoredDocs out = new ScoredDocs(Math.min(a.size, b.size));
+            int i = 0;
+            int j = 0;
+            while (i < a.size && j < b.size) {
+                if (a.docs[i] < b.docs[j]) {
+                    i++;
+                } else if (a.docs[i] > b.docs[j]) {
+                    j++;
+                } else {
+                    out.append(a.docs[i], a.scores[i] + b.scores[j]);
+                    i++;
+                    j++;
+                }
+            }
+            return out;
+        }
+
+        static ScoredDocs union(ScoredDocs a, ScoredDocs b) {
+            ScoredDocs out = new ScoredDocs(a.size + b.size);
+            int i = 0;
+            int j = 0;
+            while (i < a.size || j < b.size) {
+                if (j >= b.size || (i < a.size && a.docs[i] < b.docs[j])) {
+                    out.append(a.docs[i], a.scores[i]);
+                    i++;
+                } else if (i >= a.size || b.docs[j] < a.docs[i]) {
+                    out.append(b.docs[j], b.scores[j]);
+                    j++;
+                } else {
+                    out.append(a.docs[i], Math.max(a.scores[i], b.scores[j]));
+                    i++;
+                    j++;
+                }
+            }
+            return out;
+        }
+
+        // Highest scores first, ties broken by ascending id
+        int[] topK(int limit) {
+            int k = limit > 0 ? Math.min(limit, size) : size;
+            // Min-heap of the best k entries seen so far (heap holds indexes into docs/scores)
+            int[] heap = new int[k];
+            int heapSize = 0;
+            for (int i = 0; i < size; i++) {
+                if (heapSize < k) {
+                    heap[heapSize] = i;
+                    siftUp(heap, heapSize++);
+                } else if (k > 0 && better(i, heap[0])) {
+                    heap[0] = i;
+                    siftDown(heap, 0, heapSize);
+                }
+            }
+            int[] result = new int[heapSize];
+            for (int n = heapSize - 1; n >= 0; n--) {
+                result[n] = docs[heap[0]];
+                heap[0] = heap[--heapSize];
+                siftDown(heap, 0, heapSize);
+            }
+            return result;
+        }
+
+        private boolean better(int a, int b) {
+            return scores[a] > scores[b] || (scores[a] == scores[b] && docs[a] < docs[b]);
+        }
+
+        private void siftUp(int[] heap, int index) {
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (!better(heap[parent], heap[index])) {
+                    break;
+                }
+                int tmp = heap[parent];
+                heap[parent] = heap[index];
+                heap[index] = tmp;
+                index = parent;
+            }
+        }
+
+        private void siftDown(int[] heap, int index, int heapSize) {
+            while (true) {
+                int left = index * 2 + 1;
+                int right = left + 1;
+                int worst = index;
+                if (left < heapSize && better(heap[worst], heap[left])) {
+                    worst = left;
+                }
+                if (right < heapSize && better(heap[worst], heap[right])) {
+                    worst = right;
+                }
+                if (worst == index) {
+                    return;
+                }
+                int tmp = heap[worst];
+                heap[worst] = heap[index];
+                heap[index] = tmp;
+                index = worst;
+            }
+        }
+    }
+}
@@ -11,7 +11,7 @@ public class BorrowRecord {
     private double fineAmount;
     private boolean renewed;
     private int renewalCount;
-    private static final int MAX_RENEWAL_COUNT = 2;
+    static final int MAX_RENEWAL_COUNT = 2;
     private static final int BORROW_PERIOD_DAYS = 14;
 
     public BorrowRecord(Member member, Book book) {
@@ -41,7 +41,7 @@ public class BorrowRecord {
         return calculateDueDate(this.borrowDate);
     }
 
-    private Date calculateDueDate(Date fromDate) {
+    static Date calculateDueDate(Date fromDate) {
         java.util.Calendar calendar = java.util.Calendar.getInstance();
         calendar.setTime(fromDate);
         calendar.add(java.util.Calendar.DAY_OF_MONTH, BORROW_PERIOD_DAYS);
@@ -58,17 +58,12 @@ public class BorrowRecord {
             return 0.0;
         }
         
-        long daysOverdue = getDaysOverdue();
-        if (daysOverdue <= 0) {
-            return 0.0;
-        }
-        
-        double fineRate = 1.0; // $1 per day
-        return daysOverdue * fineRate;
+        return FinePolicy.forMemberType(member.getMemberType()).fineFor(dueDate, returnDate);
     }
 
     public boolean renewBook() {
-        if (renewed || renewalCount >= MAX_RENEWAL_COUNT || returnDate != null) {
+        // Same rule as DatabaseManager.renewLoan: up to MAX_RENEWAL_COUNT renewals, never once overdue
+        if (renewalCount >= MAX_RENEWAL_COUNT || returnDate != null) {
             return false;
         }
         
@@ -0,0 +1,462 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+// Streams the library tables to files without holding rows in memory.
+// Rows come from a forward-only streaming cursor and are encoded straight into a fixed-size buffer that is
+// drained to a file channel (through gzip when enabled), so heap use does not depend on table size.
+// exportSnapshot reads every table inside one consistent-snapshot transaction.
+//
+// Formats: CSV with a header row, JSON Lines (one object per row), or a compact binary format:
+//   "LMSX", version byte, table name, column count (short), then name and type code per column;
+//   each row is a 1 byte followed by one value per column (null flag byte, then the value);
+//   a 0 byte and the row count (long) end the file. Strings are an int length plus UTF-8 bytes.
+public class CatalogExporter {
+    private static final Logger logger = Logger.getInstance("database");
+    private static final List<String> TABLES = Arrays.asList("books", "members", "borrow_records");
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] MAGIC = {'L', 'M', 'S', 'X'};
+    private static final byte BINARY_VERSION = 1;
+
+    public enum Format {
+        CSV("csv"), JSONL("jsonl"), BINARY("lmsx");
+
+        final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    // Column type codes, shared by the encoders and written into the binary header
+    private static final byte TYPE_INT = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_DOUBLE = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_TIMESTAMP = 5;
+    private static final byte TYPE_STRING = 6;
+
+    private final Format format;
+    private final boolean gzip;
+
+    public CatalogExporter(Format format, boolean gzip) {
+        this.format = format;
+        this.gzip = gzip;
+    }
+
+    // Export all three tables as of a single point in time; returns rows written per table
+    public long[] exportSnapshot(Path directory) throws IOException, SQLException {
+        return exportSnapshot(directory, TABLES.toArray(new String[0]));
+    }
+
+    public long[] exportSnapshot(Path directory, String... tables) throws IOException, SQLException {
+        Files.createDirectories(directory);
+        long[] counts = new long[tables.length];
+        long start = System.currentTimeMillis();
+        try (Connection conn = DBConnection.getConnection()) {
+            int isolation = conn.getTransactionIsolation();
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            conn.setAutoCommit(false);
+            try {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT, READ ONLY");
+                }
+                for (int i = 0; i < tables.length; i++) {
+                    counts[i] = exportTable(conn, tables[i], directory.resolve(fileName(tables[i])));
+                }
+                conn.commit();
+            } catch (SQLException | IOException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+                conn.setTransactionIsolation(isolation);
+            }
+        }
+        logger.info("Exported snapshot of {} to {} in {}ms", Arrays.toString(tables), directory,
+                System.currentTimeMillis() - start);
+        return counts;
+    }
+
+    public String fileName(String table) {
+        return table + "." + format.extension + (gzip ? ".gz" : "");
+    }
+
+    // Stream one table into the file; the file only appears once it is complete
+    public long exportTable(Connection conn, String table, Path file) throws IOException, SQLException {
+        if (!TABLES.contains(table)) {
+            throw new IllegalArgumentException("Unknown table: " + table);
+        }
+        Path partial = file.resolveSibling(file.getFileName() + ".partial");
+        long rows;
+        try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Connector/J streams rows one at a time instead of buffering the whole result
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = stmt.executeQuery("SELECT * FROM " + table + " ORDER BY id");
+                 ChannelSink sink = new ChannelSink(partial, gzip)) {
+                rows = writeRows(table, rs, sink);
+            }
+        } catch (SQLException | IOException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Exported {} rows from {} to {}", rows, table, file);
+        return rows;
+    }
+
+    private long writeRows(String table, ResultSet rs, ChannelSink sink) throws SQLException, IOException {
+        ResultSetMetaData meta = rs.getMetaData();
+        int columns = meta.getColumnCount();
+        String[] names = new String[columns];
+        byte[] types = new byte[columns];
+        for (int c = 0; c < columns; c++) {
+            names[c] = meta.getColumnLabel(c + 1);
+            types[c] = typeOf(meta.getColumnType(c + 1));
+        }
+        writeHeader(table, names, types, sink);
+
+        long rows = 0;
+        while (rs.next()) {
+            switch (format) {
+                case CSV: writeCsvRow(rs, types, sink); break;
+                case JSONL: writeJsonRow(rs, names, types, sink); break;
+                default: writeBinaryRow(rs, types, sink); break;
+            }
+            rows++;
+        }
+        if (format == Format.BINARY) {
+            sink.putByte((byte) 0);
+            sink.putLong(rows);
+        }
+        return rows;
+    }
+
+    private static byte typeOf(int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return TYPE_INT;
+            case Types.BIGINT:
+                return TYPE_LONG;
+            case Types.FLOAT:
+            case Types.REAL:
+            case Types.DOUBLE:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return TYPE_DOUBLE;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return TYPE_BOOLEAN;
+            case Types.DATE:
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return TYPE_TIMESTAMP;
+            default:
+                return TYPE_STRING;
+        }
+    }
+
+    private void writeHeader(String table, String[] names, byte[] types, ChannelSink sink) throws IOException {
+        if (format == Format.CSV) {
+            for (int c = 0; c < names.length; c++) {
+                if (c > 0) {
+                    sink.putByte((byte) ',');
+                }
+                sink.putUtf8(csvField(names[c]));
+            }
+            sink.putByte((byte) '\n');
+        } else if (format == Format.BINARY) {
+            sink.putBytes(MAGIC);
+            sink.putByte(BINARY_VERSION);
+            sink.putString(table);
+            sink.putShort((short) names.length);
+            for (int c = 0; c < names.length; c++) {
+                sink.putString(names[c]);
+                sink.putByte(types[c]);
+            }
+        }
+    }
+
+    // Values as text, or null for SQL NULL; timestamps are ISO-8601 in UTC
+    private static String textValue(ResultSet rs, int column, byte type) throws SQLException {
+        switch (type) {
+            case TYPE_BOOLEAN: {
+                boolean value = rs.getBoolean(column);
+                return rs.wasNull() ? null : String.valueOf(value);
+            }
+            case TYPE_TIMESTAMP: {
+                Timestamp value = rs.getTimestamp(column);
+                return value == null ? null : value.toInstant().toString();
+            }
+            default:
+                return rs.getString(column);
+        }
+    }
+
+    private static void writeCsvRow(ResultSet rs, byte[] types, ChannelSink sink) throws SQLException, IOException {
+        for (int c = 0; c < types.length; c++) {
+            if (c > 0) {
+                sink.putByte((byte) ',');
+            }
+            String value = textValue(rs, c + 1, types[c]);
+            if (value != null) {
+                sink.putUtf8(csvField(value));
+            }
+        }
+        sink.putByte((byte) '\n');
+    }
+
+    private static String csvField(String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char ch = value.charAt(i);
+            quote = ch == ',' || ch == '"' || ch == '\n' || ch == '\r';
+        }
+        return quote ? '"' + value.replace("\"", "\"\"") + '"' : value;
+    }
+
+    private static void writeJsonRow(ResultSet rs, String[] names, byte[] types, ChannelSink sink)
+            throws SQLException, IOException {
+        StringBuilder line = new StringBuilder(256).append('{');
+        for (int c = 0; c < types.length; c++) {
+            if (c > 0) {
+                line.append(',');
+            }
+            appendJsonString(line, names[c]);
+            line.append(':');
+            String value = textValue(rs, c + 1, types[c]);
+            if (value == null) {
+                line.append("null");
+            } else if (types[c] == TYPE_INT || types[c] == TYPE_LONG || types[c] == TYPE_DOUBLE
+                    || types[c] == TYPE_BOOLEAN) {
+                line.append(value);
+            } else {
+                appendJsonString(line, value);
+            }
+        }
+        line.append("}\n");
+        sink.putUtf8(line);
+    }
+
+    private static void appendJsonString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            switch (ch) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (ch < 0x20) {
+                        out.append(String.format("\\u%04x", (int) ch));
+                    } else {
+                        out.append(ch);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    private static void writeBinaryRow(ResultSet rs, byte[] types, ChannelSink sink) throws SQLException, IOException {
+        sink.putByte((byte) 1);
+        for (int c = 0; c < types.length; c++) {
+            int column = c + 1;
+            switch (types[c]) {
+                case TYPE_INT: {
+                    int value = rs.getInt(column);
+                    if (sink.putNullFlag(rs.wasNull())) {
+                        sink.putInt(value);
+                    }
+                    break;
+                }
+                case TYPE_LONG: {
+                    long value = rs.getLong(column);
+                    if (sink.putNullFlag(rs.wasNull())) {
+                        sink.putLong(value);
+                    }
+                    break;
+                }
+                case TYPE_DOUBLE: {
+                    double value = rs.getDouble(column);
+                    if (sink.putNullFlag(rs.wasNull())) {
+                        sink.putDouble(value);
+                    }
+                    break;
+                }
+                case TYPE_BOOLEAN: {
+                    boolean value = rs.getBoolean(column);
+                    if (sink.putNullFlag(rs.wasNull())) {
+                        sink.putByte((byte) (value ? 1 : 0));
+                    }
+                    break;
+                }
+                case TYPE_TIMESTAMP: {
+                    Timestamp value = rs.getTimestamp(column);
+                    if (sink.putNullFlag(value == null)) {
+                        sink.putLong(value.getTime());
+                    }
+                    break;
+                }
+                default: {
+                    String value = rs.getString(column);
+                    if (sink.putNullFlag(value == null)) {
+                        sink.putString(value);
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    // Fixed-size buffer in front of a file channel, optionally gzip-compressed
+    private static class ChannelSink implements AutoCloseable {
+        private final FileChannel file;
+        private final WritableByteChannel out;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        ChannelSink(Path path, boolean gzip) throws IOException {
+            this.file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.out = gzip ? Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(file), BUFFER_SIZE)) : file;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void putByte(byte value) throws IOException {
+            ensure(1);
+            buffer.put(value);
+        }
+
+        void putShort(short value) throws IOException {
+            ensure(2);
+            buffer.putShort(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            ensure(8);
+            buffer.putDouble(value);
+        }
+
+        // Writes 0 for null and 1 otherwise; returns true when a value should follow
+        boolean putNullFlag(boolean isNull) throws IOException {
+            putByte((byte) (isNull ? 0 : 1));
+            return !isNull;
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        void putUtf8(CharSequence text) throws IOException {
+            putBytes(text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Length-prefixed UTF-8
+        void putString(String text) throws IOException {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            putBytes(bytes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                drain();
+                out.close();
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    // Usage: java CatalogExporter <directory> [csv|jsonl|binary] [gzip] [table...]
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: java CatalogExporter <directory> [csv|jsonl|binary] [gzip] [books|members|borrow_records...]");
+            System.exit(2);
+        }
+        Format format = Format.CSV;
+        boolean gzip = false;
+        List<String> tables = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i].toLowerCase(Locale.ROOT);
+            if (arg.equals("gzip")) {
+                gzip = true;
+            } else if (TABLES.contains(arg)) {
+                tables.add(arg);
+            } else {
+                format = Format.valueOf(arg.toUpperCase(Locale.ROOT));
+            }
+        }
+        if (tables.isEmpty()) {
+            tables.addAll(TABLES);
+        }
+        CatalogExporter exporter = new CatalogExporter(format, gzip);
+        try {
+            long[] counts = exporter.exportSnapshot(Paths.get(args[0]), tables.toArray(new String[0]));
+            for (int i = 0; i < counts.length; i++) {
+                System.out.println(tables.get(i) + ": " + counts[i] + " rows -> " + exporter.fileName(tables.get(i)));
+            }
+        } catch (IOException | SQLException e) {
+            logger.error("Export failed", e);
+            System.err.println("Export failed: " + e.getMessage());
+            Logger.getInstance().flush();
+            System.exit(1);
+        }
+        Logger.getInstance().flush();
+    }
+}
@@ -0,0 +1,585 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Bulk catalog import from CSV or MARC-like delimited files.
+// One thread streams records off disk in chunks, a pool parses and validates chunks in parallel,
+// and the calling thread inserts each chunk as one JDBC batch in file order. The import_checkpoints row
+// for the file is updated in the same transaction as its batch, so an interrupted import resumes exactly
+// after the last committed chunk. Rows that fail to parse or validate go to <file>.rejects.
+//
+// CSV: RFC 4180 quoting, first row is a header naming the columns
+//      (title, author, publisher, year, isbn, category, total_copies, available_copies, location).
+// MARC-like: one record per line, fields separated by '|', each field tag=value with
+//      020 ISBN, 100 author, 245 title, 260b publisher, 260c year, 650 category, 852 location, copies.
+public class CatalogImporter {
+    private static final Logger logger = Logger.getInstance("database");
+
+    public enum Format {
+        AUTO, CSV, TSV, MARC
+    }
+
+    private static final String INSERT_SQL = "INSERT INTO books (title, author, publisher, year, isbn, category, " +
+            "total_copies, available_copies, location, available) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String[] DEFAULT_COLUMNS = {"title", "author", "publisher", "year", "isbn", "category",
+            "total_copies", "location"};
+
+    private final ImportConfig config;
+
+    public CatalogImporter(ImportConfig config) {
+        this.config = config;
+    }
+
+    public ImportReport importFile(Path file) throws IOException, SQLException {
+        Path source = file.toAbsolutePath().normalize();
+        Format format = config.format == Format.AUTO ? detectFormat(source) : config.format;
+        String sourceKey = sha256(source.toString());
+        DatabaseManager db = DatabaseManager.getInstance();
+
+        ImportReport report = new ImportReport(source, format);
+        long resumeAfter = config.restart ? 0 : loadCheckpoint(sourceKey, report);
+        report.skipped = resumeAfter;
+        if (resumeAfter > 0) {
+            logger.info("Resuming import of {} after {} records", source, resumeAfter);
+        }
+
+        Path rejectFile = Paths.get(source + ".rejects");
+        ExecutorService parsers = Executors.newFixedThreadPool(config.threads, daemonThreads("lms-import-parse"));
+        BlockingQueue<Future<Chunk>> pending = new ArrayBlockingQueue<>(config.threads * 2);
+        Reader reader = new Reader(source, format, resumeAfter, parsers, pending);
+        Thread readerThread = new Thread(reader, "lms-import-read");
+        readerThread.setDaemon(true);
+
+        long start = System.nanoTime();
+        int missingIds = 0;
+        try (BufferedWriter rejects = Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                resumeAfter > 0 ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+             Connection conn = DBConnection.getConnection()) {
+            readerThread.start();
+            while (true) {
+                Chunk chunk = pending.take().get();
+                if (chunk == Chunk.END) {
+                    break;
+                }
+                for (String reject : chunk.rejects) {
+                    rejects.write(reject);
+                    rejects.newLine();
+                }
+                // Rejects for this chunk must be on disk before the checkpoint moves past it
+                rejects.flush();
+                writeChunk(conn, sourceKey, source, chunk, report);
+                missingIds += db.booksImported(chunk.books);
+                if (report.batches % config.progressEveryBatches == 0) {
+                    logger.info("Import progress: {}", report.progress(System.nanoTime() - start));
+                }
+            }
+            if (reader.failure != null) {
+                throw reader.failure;
+            }
+            markCompleted(conn, sourceKey);
+            report.completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Parsing failed", e.getCause());
+        } finally {
+            reader.stop = true;
+            readerThread.interrupt();
+            parsers.shutdownNow();
+            report.elapsedNanos = System.nanoTime() - start;
+            if (missingIds > 0) {
+                // The driver did not return keys for every row, so index from the table instead
+                db.startSearchIndexBuild();
+            }
+            logger.info("Import {}: {}", report.completed ? "finished" : "stopped", report);
+        }
+        return report;
+    }
+
+    // Insert the chunk and advance the checkpoint atomically
+    private void writeChunk(Connection conn, String sourceKey, Path source, Chunk chunk, ImportReport report)
+            throws SQLException {
+        conn.setAutoCommit(false);
+        try (PreparedStatement insert = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement checkpoint = conn.prepareStatement(
+                     "INSERT INTO import_checkpoints (source_key, source_path, records_done, imported, rejected) " +
+                     "VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE records_done = VALUES(records_done), " +
+                     "imported = VALUES(imported), rejected = VALUES(rejected), completed = FALSE")) {
+            if (!chunk.books.isEmpty()) {
+                for (Book book : chunk.books) {
+                    insert.setString(1, book.getTitle());
+                    insert.setString(2, book.getAuthor());
+                    insert.setString(3, book.getPublisher());
+                    insert.setInt(4, book.getYear());
+                    insert.setString(5, book.getIsbn());
+                    insert.setString(6, book.getCategory());
+                    insert.setInt(7, book.getTotalCopies());
+                    insert.setInt(8, book.getAvailableCopies());
+                    insert.setString(9, book.getLocation());
+                    insert.setBoolean(10, book.isAvailable());
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                try (ResultSet keys = insert.getGeneratedKeys()) {
+                    for (int i = 0; i < chunk.books.size() && keys.next(); i++) {
+                        chunk.books.get(i).setId(keys.getInt(1));
+                    }
+                }
+            }
+            checkpoint.setString(1, sourceKey);
+            checkpoint.setString(2, source.toString());
+            checkpoint.setLong(3, chunk.lastRecord);
+            checkpoint.setLong(4, report.imported + chunk.books.size());
+            checkpoint.setLong(5, report.rejected + chunk.rejects.size());
+            checkpoint.executeUpdate();
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        report.imported += chunk.books.size();
+        report.rejected += chunk.rejects.size();
+        report.records = chunk.lastRecord;
+        report.batches++;
+    }
+
+    private long loadCheckpoint(String sourceKey, ImportReport report) throws SQLException {
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT records_done, imported, rejected, completed FROM import_checkpoints WHERE source_key = ?")) {
+            pstmt.setString(1, sourceKey);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next() || rs.getBoolean(4)) {
+                    // Never imported, or a finished import being run again from the start
+                    return 0;
+                }
+                report.imported = rs.getLong(2);
+                report.rejected = rs.getLong(3);
+                report.records = rs.getLong(1);
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    private void markCompleted(Connection conn, String sourceKey) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "UPDATE import_checkpoints SET completed = TRUE WHERE source_key = ?")) {
+            pstmt.setString(1, sourceKey);
+            pstmt.executeUpdate();
+        }
+    }
+
+    static Format detectFormat(Path file) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return Format.CSV;
+        }
+        if (name.endsWith(".tsv")) {
+            return Format.TSV;
+        }
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    return line.contains("245=") ? Format.MARC : Format.CSV;
+                }
+            }
+        }
+        return Format.CSV;
+    }
+
+    // Streams logical records off disk and hands chunks of them to the parser pool in file order
+    private class Reader implements Runnable {
+        private final Path file;
+        private final Format format;
+        private final long resumeAfter;
+        private final ExecutorService parsers;
+        private final BlockingQueue<Future<Chunk>> pending;
+        private volatile boolean stop;
+        private volatile IOException failure;
+
+        Reader(Path file, Format format, long resumeAfter, ExecutorService parsers, BlockingQueue<Future<Chunk>> pending) {
+            this.file = file;
+            this.format = format;
+            this.resumeAfter = resumeAfter;
+            this.parsers = parsers;
+            this.pending = pending;
+        }
+
+        @Override
+        public void run() {
+            try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                char delimiter = format == Format.TSV ? '\t' : ',';
+                String[] columns = format == Format.MARC ? null : DEFAULT_COLUMNS;
+                long record = 0;
+                int lineNumber = 0;
+                List<String> raw = new ArrayList<>(config.batchSize);
+                List<Integer> lines = new ArrayList<>(config.batchSize);
+                StringBuilder pendingRecord = new StringBuilder();
+                int recordLine = 0;
+                boolean firstRecord = true;
+                String line;
+                while (!stop && (line = in.readLine()) != null) {
+                    lineNumber++;
+                    if (pendingRecord.length() == 0) {
+                        recordLine = lineNumber;
+                        if (line.trim().isEmpty()) {
+                            continue;
+                        }
+                    } else {
+                        pendingRecord.append('\n');
+                    }
+                    pendingRecord.append(line);
+                    // A quoted CSV field may continue on the next line
+                    if (format != Format.MARC && !quotesBalanced(pendingRecord)) {
+                        continue;
+                    }
+                    String text = pendingRecord.toString();
+                    pendingRecord.setLength(0);
+
+                    if (firstRecord) {
+                        firstRecord = false;
+                        if (format != Format.MARC && looksLikeHeader(text, delimiter)) {
+                            columns = headerColumns(text, delimiter);
+                            continue;
+                        }
+                    }
+                    record++;
+                    if (record <= resumeAfter) {
+                        continue;
+                    }
+                    raw.add(text);
+                    lines.add(recordLine);
+                    if (raw.size() == config.batchSize) {
+                        submit(raw, lines, record, columns, delimiter);
+                        raw = new ArrayList<>(config.batchSize);
+                        lines = new ArrayList<>(config.batchSize);
+                    }
+                }
+                if (pendingRecord.length() > 0 && !stop) {
+                    // Unterminated quote at end of file: reject what is left
+                    record++;
+                    if (record > resumeAfter) {
+                        raw.add(pendingRecord.toString());
+                        lines.add(recordLine);
+                    }
+                }
+                if (!raw.isEmpty()) {
+                    submit(raw, lines, record, columns, delimiter);
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                pending.put(CompletableFuture.completedFuture(Chunk.END));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void submit(List<String> raw, List<Integer> lines, long lastRecord, String[] columns, char delimiter)
+                throws InterruptedException {
+            pending.put(parsers.submit(() -> parseChunk(raw, lines, lastRecord, columns, delimiter)));
+        }
+
+        private Chunk parseChunk(List<String> raw, List<Integer> lines, long lastRecord, String[] columns, char delimiter) {
+            Chunk chunk = new Chunk(lastRecord);
+            for (int i = 0; i < raw.size(); i++) {
+                String text = raw.get(i);
+                String problem;
+                Book book = null;
+                try {
+                    Map<String, String> fields = format == Format.MARC ? parseMarc(text) : parseCsv(text, columns, delimiter);
+                    book = toBook(fields);
+                    problem = ValidationUtils.checkBook(book);
+                } catch (IllegalArgumentException e) {
+                    problem = e.getMessage();
+                }
+                if (problem == null) {
+                    chunk.books.add(book);
+                } else {
+                    chunk.rejects.add("line " + lines.get(i) + ": " + problem + ": " + text.replace('\n', ' '));
+                }
+            }
+            return chunk;
+        }
+    }
+
+    static boolean quotesBalanced(CharSequence text) {
+        int quotes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '"') {
+                quotes++;
+            }
+        }
+        return quotes % 2 == 0;
+    }
+
+    private static boolean looksLikeHeader(String text, char delimiter) {
+        for (String column : splitCsv(text, delimiter)) {
+            if (column.trim().equalsIgnoreCase("title")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String[] headerColumns(String text, char delimiter) {
+        List<String> names = splitCsv(text, delimiter);
+        String[] columns = new String[names.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = names.get(i).trim().toLowerCase(Locale.ROOT).replace(' ', '_');
+        }
+        return columns;
+    }
+
+    static Map<String, String> parseCsv(String text, String[] columns, char delimiter) {
+        List<String> values = splitCsv(text, delimiter);
+        if (values.size() > columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " fields but found " + values.size());
+        }
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < values.size(); i++) {
+            fields.put(columns[i], values.get(i));
+        }
+        return fields;
+    }
+
+    // RFC 4180 field splitting: "" inside a quoted field is a literal quote
+    static List<String> splitCsv(String text, char delimiter) {
+        List<String> values = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                values.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        values.add(field.toString());
+        return values;
+    }
+
+    static Map<String, String> parseMarc(String text) {
+        Map<String, String> fields = new HashMap<>();
+        for (String part : text.split("\\|")) {
+            int equals = part.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Field without tag: " + part);
+            }
+            String tag = part.substring(0, equals).trim();
+            String value = part.substring(equals + 1);
+            switch (tag) {
+                case "020": fields.put("isbn", value); break;
+                case "100": fields.put("author", value); break;
+                case "245": fields.put("title", value); break;
+                case "260b": fields.put("publisher", value); break;
+                case "260c": fields.put("year", value); break;
+                case "650": fields.put("category", value); break;
+                case "852": fields.put("location", value); break;
+                case "copies": fields.put("total_copies", value); break;
+                default: break;
+            }
+        }
+        return fields;
+    }
+
+    static Book toBook(Map<String, String> fields) {
+        int totalCopies = parseInt(fields, "total_copies", 1);
+        Book book = new Book(0, text(fields, "title"), text(fields, "author"), text(fields, "publisher"),
+                parseInt(fields, "year", 0), true, text(fields, "isbn"), text(fields, "category"), totalCopies,
+                text(fields, "location"));
+        if (fields.containsKey("available_copies")) {
+            int available = parseInt(fields, "available_copies", totalCopies);
+            book.setAvailableCopies(available);
+            book.setAvailable(available > 0);
+        }
+        return book;
+    }
+
+    private static String text(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        if (value == null) {
+            return null;
+        }
+        value = value.trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static int parseInt(Map<String, String> fields, String name, int defaultValue) {
+        String value = text(fields, name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " - " + value);
+        }
+    }
+
+    private static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private static class Chunk {
+        // End-of-input marker, sent through the same queue as parsed chunks
+        static final Chunk END = new Chunk(-1);
+
+        // Record number of the chunk's last record; the checkpoint advances to it on commit
+        final long lastRecord;
+        final List<Book> books = new ArrayList<>();
+        final List<String> rejects = new ArrayList<>();
+
+        Chunk(long lastRecord) {
+            this.lastRecord = lastRecord;
+        }
+    }
+
+    public static class ImportReport {
+        private final Path source;
+        private final Format format;
+        long records;
+        long skipped;
+        long imported;
+        long rejected;
+        long batches;
+        long elapsedNanos;
+        boolean completed;
+
+        ImportReport(Path source, Format format) {
+            this.source = source;
+            this.format = format;
+        }
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        String progress(long elapsed) {
+            double seconds = Math.max(1e-9, elapsed / 1e9);
+            return String.format("%d records, %d imported, %d rejected, %.0f records/s",
+                    records, imported, rejected, (records - skipped) / seconds);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%s): %s in %.1fs, %d batches, %d skipped by checkpoint",
+                    source, format, progress(elapsedNanos), elapsedNanos / 1e9, batches, skipped);
+        }
+    }
+
+    public static class ImportConfig {
+        int batchSize = 1000;
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        int progressEveryBatches = 50;
+        Format format = Format.AUTO;
+        boolean restart;
+
+        // Each setting can be overridden with -Dlms.import.<name>=<value>
+        static ImportConfig fromSystemProperties() {
+            ImportConfig config = new ImportConfig();
+            config.batchSize = Math.max(1, Integer.getInteger("lms.import.batchSize", config.batchSize));
+            config.threads = Math.max(1, Integer.getInteger("lms.import.threads", config.threads));
+            config.progressEveryBatches = Math.max(1, Integer.getInteger("lms.import.progressEveryBatches", config.progressEveryBatches));
+            config.format = Format.valueOf(System.getProperty("lms.import.format", config.format.name()).toUpperCase(Locale.ROOT));
+            config.restart = Boolean.getBoolean("lms.import.restart");
+            return config;
+        }
+    }
+
+    // Usage: java CatalogImporter <file> [<file>...]
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: java [-Dlms.import.batchSize=1000] [-Dlms.import.threads=N] " +
+                    "[-Dlms.import.format=auto|csv|tsv|marc] [-Dlms.import.restart=true] CatalogImporter <file>...");
+            System.exit(2);
+        }
+        CatalogImporter importer = new CatalogImporter(ImportConfig.fromSystemProperties());
+        int failures = 0;
+        for (String arg : args) {
+            try {
+                System.out.println(importer.importFile(Paths.get(arg)));
+            } catch (IOException | SQLException e) {
+                failures++;
+                logger.error("Import of " + arg + " failed; rerun to resume from the last checkpoint", e);
+                System.err.println("Import of " + arg + " failed: " + e.getMessage());
+            }
+        }
+        Logger.getInstance().flush();
+        System.exit(failures == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,401 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ConnectionPool {
+    private static final Logger logger = Logger.getInstance("database");
+    private static ConnectionPool instance;
+
+    private final PoolConfig config;
+    // Idle connections, most recently returned first so warm connections are reused
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> activeConnections = ConcurrentHashMap.newKeySet();
+    // One permit per connection that may be checked out at the same time
+    private final Semaphore permits;
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean shutdown;
+
+    // Statistics
+    private final AtomicInteger waitingThreads = new AtomicInteger();
+    private final AtomicLong totalBorrows = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong borrowTimeouts = new AtomicLong();
+    private final AtomicLong connectionsCreated = new AtomicLong();
+    private final AtomicLong connectionsClosed = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong leaksDetected = new AtomicLong();
+
+    private ConnectionPool(PoolConfig config) {
+        this.config = config;
+        this.permits = new Semaphore(config.maxSize, true);
+
+        // Create the database once at bootstrap instead of on every borrow
+        DBConnection.createDatabaseIfNotExists();
+        fillToMinimum();
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "lms-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeep,
+                config.housekeepingIntervalMillis, config.housekeepingIntervalMillis, TimeUnit.MILLISECONDS);
+
+        logger.info("Connection pool started (min={}, max={})", config.minSize, config.maxSize);
+    }
+
+    public static synchronized ConnectionPool getInstance() {
+        if (instance == null) {
+            instance = new ConnectionPool(PoolConfig.fromSystemProperties());
+            Runtime.getRuntime().addShutdownHook(new Thread(instance::shutdown, "lms-pool-shutdown"));
+        }
+        return instance;
+    }
+
+    public Connection getConnection() throws SQLException {
+        if (shutdown) {
+            throw new SQLException("Connection pool has been shut down");
+        }
+
+        long start = System.nanoTime();
+        waitingThreads.incrementAndGet();
+        try {
+            if (!permits.tryAcquire(config.connectionTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                borrowTimeouts.incrementAndGet();
+                throw new SQLException("Timed out after " + config.connectionTimeoutMillis
+                        + "ms waiting for a connection (" + getStats() + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        } finally {
+            waitingThreads.decrementAndGet();
+        }
+
+        try {
+            PooledConnection pooled = takeIdleConnection();
+            if (pooled == null) {
+                pooled = createConnection();
+            }
+            pooled.borrowed(config.leakDetectionThresholdMillis > 0);
+            activeConnections.add(pooled);
+            recordWait(System.nanoTime() - start);
+            return pooled.proxy;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    // Poll idle connections until one passes the lifetime and validation checks
+    private PooledConnection takeIdleConnection() {
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            if (pooled.isExpired(config.maxLifetimeMillis)) {
+                closeQuietly(pooled);
+                continue;
+            }
+            if (System.currentTimeMillis() - pooled.lastUsed > config.validationIntervalMillis && !isValid(pooled)) {
+                validationFailures.incrementAndGet();
+                closeQuietly(pooled);
+                continue;
+            }
+            return pooled;
+        }
+        return null;
+    }
+
+    private boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.raw.isValid(config.validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection createConnection() throws SQLException {
+        PooledConnection pooled = new PooledConnection(DBConnection.openConnection(config.statementCacheSize > 0),
+                config.statementCacheSize);
+        connectionsCreated.incrementAndGet();
+        return pooled;
+    }
+
+    private void recordWait(long waitNanos) {
+        totalBorrows.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        long currentMax;
+        while (waitNanos > (currentMax = maxWaitNanos.get())) {
+            if (maxWaitNanos.compareAndSet(currentMax, waitNanos)) {
+                break;
+            }
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        if (!activeConnections.remove(pooled)) {
+            return;
+        }
+        try {
+            pooled.statements.checkIn();
+            boolean reusable = !shutdown && !pooled.isExpired(config.maxLifetimeMillis) && resetState(pooled);
+            if (reusable) {
+                pooled.lastUsed = System.currentTimeMillis();
+                idleConnections.offerFirst(pooled);
+            } else {
+                closeQuietly(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    // Undo any session state a caller left behind so the next borrower gets a clean connection
+    private boolean resetState(PooledConnection pooled) {
+        try {
+            if (pooled.raw.isClosed()) {
+                return false;
+            }
+            if (!pooled.raw.getAutoCommit()) {
+                pooled.raw.rollback();
+                pooled.raw.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            logger.error("Discarding pooled connection that could not be reset", e);
+            return false;
+        }
+    }
+
+    private void housekeep() {
+        try {
+            long now = System.currentTimeMillis();
+
+            // Evict connections that have been idle too long or exceeded their lifetime
+            Iterator<PooledConnection> it = idleConnections.descendingIterator();
+            while (it.hasNext()) {
+                PooledConnection pooled = it.next();
+                boolean idleTooLong = now - pooled.lastUsed > config.idleTimeoutMillis && getTotalConnections() > config.minSize;
+                if ((idleTooLong || pooled.isExpired(config.maxLifetimeMillis)) && idleConnections.remove(pooled)) {
+                    closeQuietly(pooled);
+                }
+            }
+
+            // Report connections that were borrowed and never returned
+            if (config.leakDetectionThresholdMillis > 0) {
+                for (PooledConnection pooled : activeConnections) {
+                    if (!pooled.leakReported && now - pooled.borrowedAt > config.leakDetectionThresholdMillis) {
+                        pooled.leakReported = true;
+                        leaksDetected.incrementAndGet();
+                        logger.error("Possible connection leak: connection held for " + (now - pooled.borrowedAt)
+                                + "ms", pooled.borrowTrace);
+                    }
+                }
+            }
+
+            fillToMinimum();
+        } catch (RuntimeException e) {
+            logger.error("Connection pool housekeeping failed", e);
+        }
+    }
+
+    private void fillToMinimum() {
+        while (!shutdown && getTotalConnections() < config.minSize) {
+            try {
+                PooledConnection pooled = createConnection();
+                pooled.lastUsed = System.currentTimeMillis();
+                idleConnections.offerLast(pooled);
+            } catch (SQLException e) {
+                logger.error("Failed to create pooled connection", e);
+                return;
+            }
+        }
+    }
+
+    private void closeQuietly(PooledConnection pooled) {
+        connectionsClosed.incrementAndGet();
+        pooled.statements.closeAll();
+        try {
+            pooled.raw.close();
+        } catch (SQLException e) {
+            logger.error("Error closing pooled connection", e);
+        }
+    }
+
+    public synchronized void shutdown() {
+        if (shutdown) {
+            return;
+        }
+        shutdown = true;
+        if (housekeeper != null) {
+            housekeeper.shutdownNow();
+        }
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            closeQuietly(pooled);
+        }
+        logger.info("Connection pool shut down ({})", getStats());
+        logger.info("Statement cache: {}", getStatementStats());
+    }
+
+    // Statistics
+    public int getActiveConnections() {
+        return activeConnections.size();
+    }
+
+    public int getIdleConnections() {
+        return idleConnections.size();
+    }
+
+    public int getTotalConnections() {
+        return activeConnections.size() + idleConnections.size();
+    }
+
+    public int getWaitingThreads() {
+        return waitingThreads.get();
+    }
+
+    public long getTotalBorrows() {
+        return totalBorrows.get();
+    }
+
+    public double getAverageWaitMillis() {
+        long borrows = totalBorrows.get();
+        return borrows == 0 ? 0.0 : totalWaitNanos.get() / (borrows * 1_000_000.0);
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    public long getBorrowTimeouts() {
+        return borrowTimeouts.get();
+    }
+
+    public long getLeaksDetected() {
+        return leaksDetected.get();
+    }
+
+    // Prepared statement reuse and statements or result sets left open by callers, across all connections
+    public String getStatementStats() {
+        return StatementCache.getStats();
+    }
+
+    public String getStats() {
+        return String.format("active=%d, idle=%d, waiting=%d, borrows=%d, avgWait=%.3fms, maxWait=%.3fms, " +
+                        "timeouts=%d, created=%d, closed=%d, validationFailures=%d, leaks=%d",
+                getActiveConnections(), getIdleConnections(), getWaitingThreads(), getTotalBorrows(),
+                getAverageWaitMillis(), getMaxWaitMillis(), getBorrowTimeouts(), connectionsCreated.get(),
+                connectionsClosed.get(), validationFailures.get(), getLeaksDetected());
+    }
+
+    // A physical connection plus its pool bookkeeping; callers only ever see the proxy
+    private class PooledConnection implements InvocationHandler {
+        private final Connection raw;
+        private final Connection proxy;
+        private final StatementCache statements;
+        private final long createdAt = System.currentTimeMillis();
+        private volatile long lastUsed;
+        private volatile long borrowedAt;
+        private volatile boolean checkedOut;
+        private volatile boolean leakReported;
+        private volatile Throwable borrowTrace;
+
+        PooledConnection(Connection raw, int statementCacheSize) {
+            this.raw = raw;
+            this.statements = new StatementCache(raw, statementCacheSize);
+            this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, this);
+        }
+
+        void borrowed(boolean captureTrace) {
+            borrowedAt = System.currentTimeMillis();
+            leakReported = false;
+            borrowTrace = captureTrace ? new Throwable("Connection borrowed here") : null;
+            checkedOut = true;
+        }
+
+        boolean isExpired(long maxLifetimeMillis) {
+            return maxLifetimeMillis > 0 && System.currentTimeMillis() - createdAt > maxLifetimeMillis;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name)) {
+                if (checkedOut) {
+                    checkedOut = false;
+                    release(this);
+                }
+                return null;
+            }
+            if ("isClosed".equals(name)) {
+                return !checkedOut || raw.isClosed();
+            }
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(name)) {
+                return "PooledConnection[" + raw + "]";
+            }
+            if (!checkedOut) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if (name.startsWith("prepare") || "createStatement".equals(name)) {
+                return statements.create((Connection) proxy, method, args);
+            }
+            try {
+                return method.invoke(raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    public static class PoolConfig {
+        int minSize = 2;
+        int maxSize = 10;
+        long connectionTimeoutMillis = 30_000;
+        long idleTimeoutMillis = 10 * 60_000;
+        long maxLifetimeMillis = 30 * 60_000;
+        long validationIntervalMillis = 5_000;
+        int validationTimeoutSeconds = 2;
+        long leakDetectionThresholdMillis = 60_000;
+        long housekeepingIntervalMillis = 30_000;
+        // Prepared statements kept open per connection; 0 turns off caching and server-side preparation
+        int statementCacheSize = 64;
+
+        // Each setting can be overridden with -Dlms.pool.<name>=<value>
+        static PoolConfig fromSystemProperties() {
+            PoolConfig config = new PoolConfig();
+            config.minSize = Integer.getInteger("lms.pool.minSize", config.minSize);
+            config.maxSize = Math.max(1, Integer.getInteger("lms.pool.maxSize", config.maxSize));
+            config.minSize = Math.max(0, Math.min(config.minSize, config.maxSize));
+            config.connectionTimeoutMillis = Long.getLong("lms.pool.connectionTimeoutMillis", config.connectionTimeoutMillis);
+            config.idleTimeoutMillis = Long.getLong("lms.pool.idleTimeoutMillis", config.idleTimeoutMillis);
+            config.maxLifetimeMillis = Long.getLong("lms.pool.maxLifetimeMillis", config.maxLifetimeMillis);
+            config.validationIntervalMillis = Long.getLong("lms.pool.validationIntervalMillis", config.validationIntervalMillis);
+            config.validationTimeoutSeconds = Integer.getInteger("lms.pool.validationTimeoutSeconds", config.validationTimeoutSeconds);
+            config.leakDetectionThresholdMillis = Long.getLong("lms.pool.leakDetectionThresholdMillis", config.leakDetectionThresholdMillis);
+            config.housekeepingIntervalMillis = Math.max(1_000, Long.getLong("lms.pool.housekeepingIntervalMillis", config.housekeepingIntervalMillis));
+            config.statementCacheSize = Math.max(0, Integer.getInteger("lms.pool.statementCacheSize", config.statementCacheSize));
+            return config;
+        }
+    }
+}
@@ -8,18 +8,31 @@ public class DBConnection {
     private static final String DB_NAME = "librarydb";
     private static final String USER = "root";
     private static final String PASSWORD = "";
+    // Lets the driver send JDBC batches as multi-row INSERTs
+    private static final String OPTIONS = "?rewriteBatchedStatements=true";
+    // Statements are parsed once by the server and reused while the pool keeps them cached
+    private static final String SERVER_PREPARED_OPTIONS = "&useServerPrepStmts=true";
 
+    // Borrow a pooled connection; closing it returns it to the pool
     public static Connection getConnection() throws SQLException {
+        return ConnectionPool.getInstance().getConnection();
+    }
+
+    // Open a new physical connection to the library database (used by the pool)
+    static Connection openConnection(boolean serverPrepared) throws SQLException {
+        return DriverManager.getConnection(URL + DB_NAME + OPTIONS + (serverPrepared ? SERVER_PREPARED_OPTIONS : ""),
+                USER, PASSWORD);
+    }
+
+    // Run once at bootstrap, before the pool opens its first connection
+    static void createDatabaseIfNotExists() {
         // First connect without database name
-        Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
-        Statement stmt = conn.createStatement();
-        
-        // Create database if it doesn't exist
-        stmt.executeUpdate("CREATE DATABASE IF NOT EXISTS " + DB_NAME);
-        stmt.close();
-        conn.close();
-        
-        // Now connect to the specific database
-        return DriverManager.getConnection(URL + DB_NAME, USER, PASSWORD);
+        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
+             Statement stmt = conn.createStatement()) {
+            // Create database if it doesn't exist
+            stmt.executeUpdate("CREATE DATABASE IF NOT EXISTS " + DB_NAME);
+        } catch (SQLException e) {
+            Logger.getInstance().error("Failed to create database " + DB_NAME, e);
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,13 +1,47 @@
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class DatabaseManager {
-    private static final Logger logger = Logger.getInstance();
+    private static final Logger logger = Logger.getInstance("database");
     private static DatabaseManager instance;
     
+    // Explicit column list so catalog reads never pull columns they do not map
+    static final String BOOK_COLUMNS = "id, title, author, publisher, year, available, isbn, category, " +
+            "total_copies, available_copies, location";
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+    private static final int MAX_IDS_PER_QUERY = 500;
+    private static final long INDEX_BUILD_RETRY_MILLIS = 30_000;
+    private static final long MAX_INDEX_BUILD_RETRY_MILLIS = 10 * 60_000;
+    
+    private final BookSearchIndex searchIndex = new BookSearchIndex();
+    private final PrefixCompletionIndex completionIndex = new PrefixCompletionIndex();
+    private final BookCache bookCache = new BookCache(BookCache.CacheConfig.fromSystemProperties());
+    private final SearchResultCache searchCache = SearchResultCache.fromSystemProperties();
+    private final AvailabilityGate availability = AvailabilityGate.fromSystemProperties();
+    private final TransactionRunner transactions = TransactionRunner.fromSystemProperties();
+    private final FineAccrualEngine fineAccrual = FineAccrualEngine.fromSystemProperties(transactions);
+    private final DueDateReminders reminders = DueDateReminders.fromSystemProperties();
+    // Null unless group commit is enabled
+    private final GroupCommitter groupCommitter = GroupCommitter.fromSystemProperties(transactions);
+    
     private DatabaseManager() {
         initializeDatabase();
+        startSearchIndexBuild();
+        fineAccrual.start();
+        reminders.start();
     }
     
     public static synchronized DatabaseManager getInstance() {
@@ -19,59 +53,84 @@ public class DatabaseManager {
     
     private void initializeDatabase() {
         try (Connection conn = DBConnection.getConnection()) {
-            createTables(conn);
+            SchemaMigrator.migrate(conn);
+            FinePolicy.load(conn);
             logger.info("Database initialized successfully");
         } catch (SQLException e) {
             logger.error("Failed to initialize database", e);
         }
     }
     
-    private void createTables(Connection conn) throws SQLException {
-        String createBooksTable = "CREATE TABLE IF NOT EXISTS books (" +
-                "id INT PRIMARY KEY AUTO_INCREMENT, " +
-                "title VARCHAR(255) NOT NULL, " +
-                "author VARCHAR(255) NOT NULL, " +
-                "publisher VARCHAR(255), " +
-                "year INT, " +
-                "isbn VARCHAR(20), " +
-                "category VARCHAR(100), " +
-                "total_copies INT DEFAULT 1, " +
-                "available_copies INT DEFAULT 1, " +
-                "location VARCHAR(100), " +
-                "date_added TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
-                "available BOOLEAN DEFAULT TRUE)";
-        
-        String createMembersTable = "CREATE TABLE IF NOT EXISTS members (" +
-                "id INT PRIMARY KEY AUTO_INCREMENT, " +
-                "name VARCHAR(255) NOT NULL, " +
-                "email VARCHAR(255) UNIQUE NOT NULL, " +
-                "phone VARCHAR(20), " +
-                "address VARCHAR(255), " +
-                "join_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
-                "expiry_date TIMESTAMP, " +
-                "active BOOLEAN DEFAULT TRUE, " +
-                "member_type VARCHAR(50) DEFAULT 'Regular', " +
-                "max_books_allowed INT DEFAULT 3, " +
-                "fine_amount DOUBLE DEFAULT 0.0)";
-        
-        String createBorrowRecordsTable = "CREATE TABLE IF NOT EXISTS borrow_records (" +
-                "id INT PRIMARY KEY AUTO_INCREMENT, " +
-                "member_id INT NOT NULL, " +
-                "book_id INT NOT NULL, " +
-                "borrow_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
-                "due_date TIMESTAMP NOT NULL, " +
-                "return_date TIMESTAMP, " +
-                "fine_amount DOUBLE DEFAULT 0.0, " +
-                "renewed BOOLEAN DEFAULT FALSE, " +
-                "renewal_count INT DEFAULT 0, " +
-                "FOREIGN KEY (member_id) REFERENCES members(id) ON DELETE CASCADE, " +
-                "FOREIGN KEY (book_id) REFERENCES books(id) ON DELETE CASCADE)";
-        
-        Statement stmt = conn.createStatement();
-        stmt.executeUpdate(createBooksTable);
-        stmt.executeUpdate(createMembersTable);
-        stmt.executeUpdate(createBorrowRecordsTable);
-        stmt.close();
+    // Build the full-text and completion indexes from one streaming scan; searches fall back to SQL until it is ready.
+    // A scan that fails part-way never finishes the build; it is retried with growing delays instead.
+    void startSearchIndexBuild() {
+        Thread builder = new Thread(() -> {
+            long retryDelayMillis = INDEX_BUILD_RETRY_MILLIS;
+            while (true) {
+                long start = System.currentTimeMillis();
+                searchIndex.beginBuild();
+                completionIndex.beginBuild();
+                long count = forEachBook(book -> {
+                    searchIndex.addFromScan(book);
+                    completionIndex.addFromScan(book);
+                });
+                if (count >= 0) {
+                    searchIndex.finishBuild();
+                    completionIndex.finishBuild();
+                    // Results cached from the SQL fallback are ranked differently
+                    searchCache.catalogChanged();
+                    logger.info("Search index built: {} books in {}ms", count, System.currentTimeMillis() - start);
+                    return;
+                }
+                logger.error("Search index build failed; searches stay on SQL, retrying in {}s", retryDelayMillis / 1000);
+                try {
+                    Thread.sleep(retryDelayMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                retryDelayMillis = Math.min(retryDelayMillis * 2, MAX_INDEX_BUILD_RETRY_MILLIS);
+            }
+        }, "lms-search-index-build");
+        builder.setDaemon(true);
+        builder.start();
+    }
+    
+    public BookSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+    
+    public BookCache getBookCache() {
+        return bookCache;
+    }
+    
+    public SearchResultCache getSearchCache() {
+        return searchCache;
+    }
+    
+    public DueDateReminders getReminders() {
+        return reminders;
+    }
+    
+    public FineAccrualEngine getFineAccrualEngine() {
+        return fineAccrual;
+    }
+    
+    public TransactionRunner getTransactionRunner() {
+        return transactions;
+    }
+    
+    public AvailabilityGate getAvailabilityGate() {
+        return availability;
+    }
+    
+    // Null when group commit is disabled
+    public GroupCommitter getGroupCommitter() {
+        return groupCommitter;
+    }
+    
+    // Top-k title and author completions for a typed prefix; served from memory only
+    public List<PrefixCompletionIndex.Completion> completeBooks(String prefix, int limit) {
+        return completionIndex.complete(prefix, limit);
     }
     
     // Book CRUD Operations
@@ -101,7 +160,13 @@ public class DatabaseManager {
             try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
                 if (generatedKeys.next()) {
                     int id = generatedKeys.getInt(1);
-                    logger.info("Book added successfully: " + book.getTitle() + " (ID: " + id + ")");
+                    book.setId(id);
+                    searchIndex.index(book);
+                    completionIndex.add(book);
+                    // After the index update, so a search cannot cache pre-insert results under the new version
+                    searchCache.catalogChanged();
+                    TransactionJournal.record(TransactionJournal.EventType.BOOK_ADDED, id, 0, 0, book.getTotalCopies());
+                    logger.info("Book added successfully: {} (ID: {})", book.getTitle(), id);
                     return id;
                 } else {
                     throw new SQLException("Creating book failed, no ID obtained.");
@@ -135,7 +200,13 @@ public class DatabaseManager {
             
             int rowsUpdated = pstmt.executeUpdate();
             if (rowsUpdated > 0) {
-                logger.info("Book updated successfully: " + book.getTitle() + " (ID: " + book.getId() + ")");
+                bookCache.invalidate(book.getId());
+                availability.invalidate(book.getId());
+                searchIndex.index(book);
+                completionIndex.update(book);
+                searchCache.catalogChanged();
+                TransactionJournal.record(TransactionJournal.EventType.BOOK_UPDATED, book.getId(), 0, 0, book.getTotalCopies());
+                logger.info("Book updated successfully: {} (ID: {})", book.getTitle(), book.getId());
                 return true;
             }
             return false;
@@ -145,6 +216,40 @@ public class DatabaseManager {
         }
     }
     
+    // Edits the descriptive fields only; copy counts are left to the loan transactions that own them
+    public boolean updateBookDetails(int bookId, String title, String author, String publisher, int year) {
+        String sql = "UPDATE books SET title = ?, author = ?, publisher = ?, year = ? WHERE id = ?";
+        
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            
+            pstmt.setString(1, title);
+            pstmt.setString(2, author);
+            pstmt.setString(3, publisher);
+            pstmt.setInt(4, year);
+            pstmt.setInt(5, bookId);
+            
+            if (pstmt.executeUpdate() == 0) {
+                return false;
+            }
+        } catch (SQLException e) {
+            logger.error("Error updating book with ID: " + bookId, e);
+            return false;
+        }
+        
+        bookCache.invalidate(bookId);
+        // Re-read so the indexes and journal see the committed row, copies included
+        Book book = getBookById(bookId);
+        if (book != null) {
+            searchIndex.index(book);
+            completionIndex.update(book);
+            TransactionJournal.record(TransactionJournal.EventType.BOOK_UPDATED, bookId, 0, 0, book.getTotalCopies());
+        }
+        searchCache.catalogChanged();
+        logger.info("Book updated successfully: {} (ID: {})", title, bookId);
+        return true;
+    }
+    
     public boolean deleteBook(int bookId) {
         String sql = "DELETE FROM books WHERE id = ?";
         
@@ -154,7 +259,13 @@ public class DatabaseManager {
             pstmt.setInt(1, bookId);
             int rowsDeleted = pstmt.executeUpdate();
             if (rowsDeleted > 0) {
-                logger.info("Book deleted successfully: ID " + bookId);
+                bookCache.invalidate(bookId);
+                availability.invalidate(bookId);
+                searchIndex.remove(bookId);
+                completionIndex.remove(bookId);
+                searchCache.catalogChanged();
+                TransactionJournal.record(TransactionJournal.EventType.BOOK_DELETED, bookId, 0, 0, 0);
+                logger.info("Book deleted successfully: ID {}", bookId);
                 return true;
             }
             return false;
@@ -164,29 +275,42 @@ public class DatabaseManager {
         }
     }
     
+    // Called by the bulk importer after each committed batch. Returns how many books came back
+    // without a generated id; the importer then rebuilds the indexes once at the end.
+    int booksImported(List<Book> books) {
+        int missingIds = 0;
+        for (Book book : books) {
+            if (book.getId() > 0) {
+                searchIndex.index(book);
+                completionIndex.add(book);
+                TransactionJournal.record(TransactionJournal.EventType.BOOK_ADDED, book.getId(), 0, 0, book.getTotalCopies());
+            } else {
+                missingIds++;
+            }
+        }
+        searchCache.catalogChanged();
+        return missingIds;
+    }
+    
+    // Read-through: served from the book cache when possible
     public Book getBookById(int bookId) {
-        String sql = "SELECT * FROM books WHERE id = ?";
+        Book cached = bookCache.get(bookId);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = bookCache.loadStamp();
+        String sql = "SELECT " + BOOK_COLUMNS + " FROM books WHERE id = ?";
         
         try (Connection conn = DBConnection.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setInt(1, bookId);
-            ResultSet rs = pstmt.executeQuery();
-            
-            if (rs.next()) {
-                Book book = new Book(
-                    rs.getInt("id"),
-                    rs.getString("title"),
-                    rs.getString("author"),
-                    rs.getString("publisher"),
-                    rs.getInt("year"),
-                    rs.getBoolean("available"),
-                    rs.getString("isbn"),
-                    rs.getString("category"),
-                    rs.getInt("total_copies"),
-                    rs.getString("location")
-                );
-                return book;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    Book book = mapBook(rs);
+                    bookCache.put(book, stamp);
+                    return book;
+                }
             }
         } catch (SQLException e) {
             logger.error("Error retrieving book with ID: " + bookId, e);
@@ -196,26 +320,14 @@ public class DatabaseManager {
     
     public List<Book> getAllBooks() {
         List<Book> books = new ArrayList<>();
-        String sql = "SELECT * FROM books";
+        String sql = "SELECT " + BOOK_COLUMNS + " FROM books";
         
         try (Connection conn = DBConnection.getConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             
             while (rs.next()) {
-                Book book = new Book(
-                    rs.getInt("id"),
-                    rs.getString("title"),
-                    rs.getString("author"),
-                    rs.getString("publisher"),
-                    rs.getInt("year"),
-                    rs.getBoolean("available"),
-                    rs.getString("isbn"),
-                    rs.getString("category"),
-                    rs.getInt("total_copies"),
-                    rs.getString("location")
-                );
-                books.add(book);
+                books.add(mapBook(rs));
             }
         } catch (SQLException e) {
             logger.error("Error retrieving all books", e);
@@ -224,9 +336,38 @@ public class DatabaseManager {
         return books;
     }
     
+    // Full-text search over title, author, publisher, ISBN and category, best matches first
     public List<Book> searchBooks(String searchTerm) {
-        List<Book> books = new ArrayList<>();
-        String sql = "SELECT * FROM books WHERE title LIKE ? OR author LIKE ? OR publisher LIKE ? OR isbn LIKE ?";
+        return getBooksByIds(searchBookIds(searchTerm, 0));
+    }
+    
+    // Ranked ids from the in-memory index; limit <= 0 returns every match.
+    // A query without exact hits is retried as a typo-tolerant search.
+    // The returned array may be shared with the result cache and must not be modified.
+    public int[] searchBookIds(String query, int limit) {
+        return searchCache.get("exact", query, limit, () -> {
+            if (searchIndex.isReady()) {
+                int[] ids = searchIndex.search(query, limit);
+                return ids.length > 0 ? ids : searchIndex.searchFuzzy(query, limit);
+            }
+            return searchBookIdsWithSql(query, limit);
+        });
+    }
+    
+    // Titles and authors within a small edit distance of the query words, closest first
+    public int[] searchBookIdsFuzzy(String query, int limit) {
+        if (!searchIndex.isReady()) {
+            logger.debug("Fuzzy search requested before the search index was built");
+            return new int[0];
+        }
+        return searchCache.get("fuzzy", query, limit, () -> searchIndex.searchFuzzy(query, limit));
+    }
+    
+    // Used only while the search index is still being built
+    private int[] searchBookIdsWithSql(String searchTerm, int limit) {
+        String sql = "SELECT id FROM books WHERE title LIKE ? OR author LIKE ? OR publisher LIKE ? OR isbn LIKE ? ORDER BY id" +
+                (limit > 0 ? " LIMIT " + limit : "");
+        List<Integer> ids = new ArrayList<>();
         
         try (Connection conn = DBConnection.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -237,31 +378,234 @@ public class DatabaseManager {
             pstmt.setString(3, term);
             pstmt.setString(4, term);
             
-            ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                Book book = new Book(
-                    rs.getInt("id"),
-                    rs.getString("title"),
-                    rs.getString("author"),
-                    rs.getString("publisher"),
-                    rs.getInt("year"),
-                    rs.getBoolean("available"),
-                    rs.getString("isbn"),
-                    rs.getString("category"),
-                    rs.getInt("total_copies"),
-                    rs.getString("location")
-                );
-                books.add(book);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
             }
         } catch (SQLException e) {
             logger.error("Error searching for books with term: " + searchTerm, e);
         }
         
+        int[] result = new int[ids.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(i);
+        }
+        return result;
+    }
+    
+    // Books for the given ids, in the same order; ids that no longer exist are skipped
+    public List<Book> getBooksByIds(int[] ids) {
+        List<Book> books = new ArrayList<>(ids.length);
+        for (int from = 0; from < ids.length; from += MAX_IDS_PER_QUERY) {
+            int to = Math.min(ids.length, from + MAX_IDS_PER_QUERY);
+            StringBuilder sql = new StringBuilder("SELECT ").append(BOOK_COLUMNS).append(" FROM books WHERE id IN (");
+            for (int i = from; i < to; i++) {
+                sql.append(i == from ? "?" : ", ?");
+            }
+            sql.append(")");
+            
+            Map<Integer, Book> byId = new HashMap<>();
+            try (Connection conn = DBConnection.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                for (int i = from; i < to; i++) {
+                    pstmt.setInt(i - from + 1, ids[i]);
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        Book book = mapBook(rs);
+                        byId.put(book.getId(), book);
+                    }
+                }
+            } catch (SQLException e) {
+                logger.error("Error retrieving books by ID", e);
+            }
+            for (int i = from; i < to; i++) {
+                Book book = byId.get(ids[i]);
+                if (book != null) {
+                    books.add(book);
+                }
+            }
+        }
+        return books;
+    }
+    
+    // Streaming catalog reads
+    
+    // Push every book through the callback while holding a single streaming cursor;
+    // rows are fetched one at a time from the server so memory stays constant.
+    // Returns the number of books, or -1 if the scan failed and the callback saw only part of the catalog.
+    public long forEachBook(Consumer<Book> callback) {
+        String sql = "SELECT " + BOOK_COLUMNS + " FROM books ORDER BY id";
+        long count = 0;
+        
+        try (Connection conn = DBConnection.getConnection();
+             Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Connector/J streams rows instead of buffering the whole result when fetch size is MIN_VALUE
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    callback.accept(mapBook(rs));
+                    count++;
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Error streaming books after " + count + " rows", e);
+            return -1;
+        }
+        return count;
+    }
+    
+    // One keyset page: books with id greater than afterId, in id order
+    public List<Book> getBooksPage(int afterId, int limit) {
+        return getBooksPage(null, afterId, limit);
+    }
+    
+    // Keyset page restricted to titles containing titleFilter (null for the whole catalog)
+    public List<Book> getBooksPage(String titleFilter, int afterId, int limit) {
+        try {
+            return queryBooksPage(titleFilter, afterId, limit);
+        } catch (SQLException e) {
+            logger.error("Error retrieving books after ID: " + afterId, e);
+            return new ArrayList<>();
+        }
+    }
+    
+    private List<Book> queryBooksPage(String titleFilter, int afterId, int limit) throws SQLException {
+        List<Book> books = new ArrayList<>(Math.min(limit, DEFAULT_PAGE_SIZE));
+        String sql = "SELECT " + BOOK_COLUMNS + " FROM books WHERE id > ?" +
+                (titleFilter != null ? " AND title LIKE ?" : "") + " ORDER BY id LIMIT ?";
+        
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            pstmt.setInt(index++, afterId);
+            if (titleFilter != null) {
+                pstmt.setString(index++, "%" + titleFilter + "%");
+            }
+            pstmt.setInt(index, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(mapBook(rs));
+                }
+            }
+        }
         return books;
     }
     
+    // Id of the row at a zero-based position in id order, or -1; lets pagers jump
+    // straight to a deep page and continue with keyset reads from there
+    public int getBookIdAtOffset(String titleFilter, int offset) {
+        String sql = "SELECT id FROM books" + (titleFilter != null ? " WHERE title LIKE ?" : "") +
+                " ORDER BY id LIMIT 1 OFFSET ?";
+        
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            if (titleFilter != null) {
+                pstmt.setString(index++, "%" + titleFilter + "%");
+            }
+            pstmt.setInt(index, offset);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        } catch (SQLException e) {
+            logger.error("Error locating book at offset: " + offset, e);
+            return -1;
+        }
+    }
+    
+    public Stream<Book> streamBooks() {
+        return streamBooks(DEFAULT_PAGE_SIZE);
+    }
+    
+    // Lazily walks the catalog page by page; no connection is held between pages.
+    // A page that cannot be read throws IllegalStateException instead of ending the stream early.
+    public Stream<Book> streamBooks(int pageSize) {
+        Iterator<Book> iterator = new Iterator<Book>() {
+            private List<Book> page = Collections.emptyList();
+            private int index;
+            private int lastId;
+            private boolean exhausted;
+            
+            @Override
+            public boolean hasNext() {
+                if (index < page.size()) {
+                    return true;
+                }
+                if (exhausted) {
+                    return false;
+                }
+                try {
+                    page = queryBooksPage(null, lastId, pageSize);
+                } catch (SQLException e) {
+                    logger.error("Error streaming books after ID: " + lastId, e);
+                    throw new IllegalStateException("Error streaming books after ID: " + lastId, e);
+                }
+                index = 0;
+                exhausted = page.size() < pageSize;
+                if (!page.isEmpty()) {
+                    lastId = page.get(page.size() - 1).getId();
+                }
+                return !page.isEmpty();
+            }
+            
+            @Override
+            public Book next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.get(index++);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT), false);
+    }
+    
+    public int getBookCount() {
+        return getBookCount(null);
+    }
+    
+    public int getBookCount(String titleFilter) {
+        String sql = "SELECT COUNT(*) FROM books" + (titleFilter != null ? " WHERE title LIKE ?" : "");
+        
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            if (titleFilter != null) {
+                pstmt.setString(1, "%" + titleFilter + "%");
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            logger.error("Error counting books", e);
+            return 0;
+        }
+    }
+    
+    static Book mapBook(ResultSet rs) throws SQLException {
+        Book book = new Book(
+            rs.getInt("id"),
+            rs.getString("title"),
+            rs.getString("author"),
+            rs.getString("publisher"),
+            rs.getInt("year"),
+            rs.getBoolean("available"),
+            rs.getString("isbn"),
+            rs.getString("category"),
+            rs.getInt("total_copies"),
+            rs.getString("location")
+        );
+        book.setAvailableCopies(rs.getInt("available_copies"));
+        return book;
+    }
+    
     // Member CRUD operations
+    // Member without loans attached; see Member.getLoanHistory() for paged history
+    public Member getMemberById(int memberId) {
+        return MemberRepository.getInstance().getMemberById(memberId);
+    }
+    
     public int addMember(Member member) {
         String sql = "INSERT INTO members (name, email, phone, address, expiry_date, active, member_type, max_books_allowed) " +
                 "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
@@ -286,7 +630,7 @@ public class DatabaseManager {
             try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
                 if (generatedKeys.next()) {
                     int id = generatedKeys.getInt(1);
-                    logger.info("Member added successfully: " + member.getName() + " (ID: " + id + ")");
+                    logger.info("Member added successfully: {} (ID: {})", member.getName(), id);
                     return id;
                 } else {
                     throw new SQLException("Creating member failed, no ID obtained.");
@@ -299,151 +643,595 @@ public class DatabaseManager {
     }
     
     // Transaction operations
+    // With group commit enabled (-Dlms.groupCommit.enabled=true) the loan shares a transaction with
+    // other concurrent borrows and returns; the call still returns only after that transaction commits
     public boolean borrowBook(Member member, Book book) {
-        Connection conn = null;
+        if (groupCommitter != null) {
+            LoanOutcome outcome = borrowBookAsync(member, book).join();
+            return outcome.isSuccess();
+        }
+        return borrowBookNow(member, book).isSuccess();
+    }
+    
+    public CompletableFuture<LoanOutcome> borrowBookAsync(Member member, Book book) {
+        if (groupCommitter == null) {
+            return CompletableFuture.completedFuture(borrowBookNow(member, book));
+        }
+        AvailabilityGate.Reservation reservation = availability.reserve(book.getId());
+        if (reservation == null) {
+            return CompletableFuture.completedFuture(soldOut(book));
+        }
+        return groupCommitter.submit("borrow", conn -> borrowInTransaction(conn, member, book), outcome -> {
+            reservation.finish(outcome);
+            loanCommitted(outcome, member, book);
+        });
+    }
+    
+    private LoanOutcome borrowBookNow(Member member, Book book) {
+        // Sold-out titles are turned away here instead of queueing on the book's row lock
+        AvailabilityGate.Reservation reservation = availability.reserve(book.getId());
+        if (reservation == null) {
+            return soldOut(book);
+        }
+        LoanOutcome outcome = runBorrow(member, book);
+        reservation.finish(outcome);
+        return outcome;
+    }
+    
+    private static LoanOutcome soldOut(Book book) {
+        logger.error("Failed to borrow book: {} - No available copies", book.getTitle());
+        return new LoanOutcome(book.getId(), 0, LoanOutcome.Status.NOT_AVAILABLE, "No available copies");
+    }
+    
+    private LoanOutcome runBorrow(Member member, Book book) {
         try {
-            conn = DBConnection.getConnection();
-            conn.setAutoCommit(false);
-            
-            // Update book availability
-            String updateBookSql = "UPDATE books SET available_copies = available_copies - 1, " +
-                    "available = CASE WHEN available_copies - 1 > 0 THEN TRUE ELSE FALSE END " +
-                    "WHERE id = ? AND available_copies > 0";
-            
-            PreparedStatement updateBookStmt = conn.prepareStatement(updateBookSql);
+            LoanOutcome outcome = transactions.execute("borrow", conn -> borrowInTransaction(conn, member, book),
+                    LoanOutcome::isSuccess);
+            loanCommitted(outcome, member, book);
+            return outcome;
+        } catch (SQLException e) {
+            logger.error("Error borrowing book: " + book.getTitle(), e);
+            return new LoanOutcome(book.getId(), 0, LoanOutcome.Status.ERROR, e.getMessage());
+        }
+    }
+    
+    // Borrow statements only; the caller owns the transaction and commits or rolls back
+    private LoanOutcome borrowInTransaction(Connection conn, Member member, Book book) throws SQLException {
+        // Claim a loan slot first; every loan transaction locks the member row before the book
+        String claimSql = "UPDATE members SET active_loans = active_loans + 1 " +
+                "WHERE id = ? AND active_loans < max_books_allowed";
+        try (PreparedStatement claimStmt = conn.prepareStatement(claimSql)) {
+            claimStmt.setInt(1, member.getId());
+            if (claimStmt.executeUpdate() == 0) {
+                logger.error("Failed to borrow book: {} - {} has reached the loan limit or does not exist",
+                        book.getTitle(), member.getName());
+                return new LoanOutcome(book.getId(), 0, LoanOutcome.Status.LIMIT_REACHED,
+                        "Member may not borrow more books");
+            }
+        }
+        
+        // Update book availability
+        String updateBookSql = "UPDATE books SET available_copies = available_copies - 1, " +
+                "available = CASE WHEN available_copies - 1 > 0 THEN TRUE ELSE FALSE END " +
+                "WHERE id = ? AND available_copies > 0";
+        
+        try (PreparedStatement updateBookStmt = conn.prepareStatement(updateBookSql)) {
             updateBookStmt.setInt(1, book.getId());
-            int bookRowsAffected = updateBookStmt.executeUpdate();
-            
-            if (bookRowsAffected == 0) {
-                conn.rollback();
-                logger.error("Failed to borrow book: " + book.getTitle() + " - No available copies");
-                return false;
+            if (updateBookStmt.executeUpdate() == 0) {
+                logger.error("Failed to borrow book: {} - No available copies", book.getTitle());
+                return new LoanOutcome(book.getId(), 0, LoanOutcome.Status.NOT_AVAILABLE, "No available copies");
             }
-            
-            // Create borrow record
-            String borrowSql = "INSERT INTO borrow_records (member_id, book_id, due_date) " +
-                    "VALUES (?, ?, ?)";
-            
-            // Calculate due date (14 days from now)
-            java.util.Calendar calendar = java.util.Calendar.getInstance();
-            calendar.add(java.util.Calendar.DAY_OF_MONTH, 14);
-            Timestamp dueDate = new Timestamp(calendar.getTimeInMillis());
-            
-            PreparedStatement borrowStmt = conn.prepareStatement(borrowSql);
+        }
+        
+        // Create borrow record
+        String borrowSql = "INSERT INTO borrow_records (member_id, book_id, due_date) " +
+                "VALUES (?, ?, ?)";
+        
+        Timestamp dueDate = dueDateFrom(new Timestamp(System.currentTimeMillis()));
+        
+        try (PreparedStatement borrowStmt = conn.prepareStatement(borrowSql, Statement.RETURN_GENERATED_KEYS)) {
             borrowStmt.setInt(1, member.getId());
             borrowStmt.setInt(2, book.getId());
             borrowStmt.setTimestamp(3, dueDate);
             
-            int borrowRowsAffected = borrowStmt.executeUpdate();
-            
-            if (borrowRowsAffected > 0) {
-                conn.commit();
-                logger.info("Book borrowed successfully: " + book.getTitle() + " by " + member.getName());
-                return true;
-            } else {
-                conn.rollback();
-                logger.error("Failed to create borrow record for book: " + book.getTitle());
-                return false;
+            if (borrowStmt.executeUpdate() == 0) {
+                logger.error("Failed to create borrow record for book: {}", book.getTitle());
+                return new LoanOutcome(book.getId(), 0, LoanOutcome.Status.ERROR, "No borrow record created");
             }
-        } catch (SQLException e) {
-            try {
-                if (conn != null) {
-                    conn.rollback();
-                }
-            } catch (SQLException ex) {
-                logger.error("Error rolling back transaction", ex);
-            }
-            logger.error("Error borrowing book: " + book.getTitle(), e);
-            return false;
-        } finally {
-            try {
-                if (conn != null) {
-                    conn.setAutoCommit(true);
-                    conn.close();
+            int borrowId = 0;
+            try (ResultSet generatedKeys = borrowStmt.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    borrowId = generatedKeys.getInt(1);
                 }
-            } catch (SQLException e) {
-                logger.error("Error closing connection", e);
             }
+            return new LoanOutcome(book.getId(), member.getId(), borrowId, 0.0, dueDate, LoanOutcome.Status.OK, null);
         }
     }
     
+    // Side effects that must wait until the borrow has committed
+    private void loanCommitted(LoanOutcome outcome, Member member, Book book) {
+        if (!outcome.isSuccess()) {
+            return;
+        }
+        bookCache.invalidate(book.getId());
+        member.loanOpened();
+        reminders.loanOpened(outcome.getBorrowId(), member.getId(), book.getId(), outcome.getDueDate());
+        TransactionJournal.record(TransactionJournal.EventType.BORROW, book.getId(), member.getId(), outcome.getBorrowId(), 1);
+        logger.info("Book borrowed successfully: {} by {}", book.getTitle(), member.getName());
+    }
+    
     public boolean returnBook(int borrowId) {
-        Connection conn = null;
+        if (groupCommitter != null) {
+            return returnBookAsync(borrowId).join().isSuccess();
+        }
+        return returnBookNow(borrowId).isSuccess();
+    }
+    
+    public CompletableFuture<LoanOutcome> returnBookAsync(int borrowId) {
+        if (groupCommitter == null) {
+            return CompletableFuture.completedFuture(returnBookNow(borrowId));
+        }
+        return groupCommitter.submit("return", conn -> returnInTransaction(conn, borrowId), this::returnCommitted);
+    }
+    
+    private LoanOutcome returnBookNow(int borrowId) {
         try {
-            conn = DBConnection.getConnection();
-            conn.setAutoCommit(false);
-            
-            // Get borrow record
-            String getBorrowSql = "SELECT * FROM borrow_records WHERE id = ? AND return_date IS NULL";
-            PreparedStatement getBorrowStmt = conn.prepareStatement(getBorrowSql);
+            LoanOutcome outcome = transactions.execute("return", conn -> returnInTransaction(conn, borrowId),
+                    LoanOutcome::isSuccess);
+            returnCommitted(outcome);
+            return outcome;
+        } catch (SQLException e) {
+            logger.error("Error returning book with borrow ID: " + borrowId, e);
+            return new LoanOutcome(0, borrowId, LoanOutcome.Status.ERROR, e.getMessage());
+        }
+    }
+    
+    // Return statements only; the caller owns the transaction and commits or rolls back
+    private LoanOutcome returnInTransaction(Connection conn, int borrowId) throws SQLException {
+        // Get borrow record, locked so two concurrent returns of the same loan cannot both succeed
+        String getBorrowSql = "SELECT b.book_id, b.member_id, b.due_date, b.accrued_fine, m.member_type " +
+                "FROM borrow_records b JOIN members m ON m.id = b.member_id " +
+                "WHERE b.id = ? AND b.return_date IS NULL FOR UPDATE OF b";
+        int bookId;
+        int memberId;
+        Timestamp dueDate;
+        double accruedFine;
+        FinePolicy policy;
+        try (PreparedStatement getBorrowStmt = conn.prepareStatement(getBorrowSql)) {
             getBorrowStmt.setInt(1, borrowId);
-            ResultSet rs = getBorrowStmt.executeQuery();
-            
-            if (!rs.next()) {
-                conn.rollback();
-                logger.error("Borrow record not found or book already returned: " + borrowId);
-                return false;
+            try (ResultSet rs = getBorrowStmt.executeQuery()) {
+                if (!rs.next()) {
+                    logger.error("Borrow record not found or book already returned: {}", borrowId);
+                    return new LoanOutcome(0, borrowId, LoanOutcome.Status.ALREADY_RETURNED,
+                            "Borrow record not found or book already returned");
+                }
+                bookId = rs.getInt("book_id");
+                memberId = rs.getInt("member_id");
+                dueDate = rs.getTimestamp("due_date");
+                accruedFine = rs.getDouble("accrued_fine");
+                policy = FinePolicy.forMemberType(rs.getString("member_type"));
             }
-            
-            int bookId = rs.getInt("book_id");
-            int memberId = rs.getInt("member_id");
-            
-            // Update book availability
-            String updateBookSql = "UPDATE books SET available_copies = available_copies + 1, available = TRUE WHERE id = ?";
-            PreparedStatement updateBookStmt = conn.prepareStatement(updateBookSql);
+        }
+        
+        // Calculate fine if overdue
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        double fineAmount = policy.fineFor(dueDate, now);
+        
+        // Release the member's loan slot and charge any fine; the fine replaces what was accrued while the loan was out.
+        // The member row is updated before the book, the same order as the borrow paths.
+        String updateMemberSql = "UPDATE members SET active_loans = GREATEST(active_loans - 1, 0), " +
+                "fine_amount = fine_amount + ?, accrued_fines = GREATEST(accrued_fines - ?, 0) WHERE id = ?";
+        try (PreparedStatement updateMemberStmt = conn.prepareStatement(updateMemberSql)) {
+            updateMemberStmt.setDouble(1, fineAmount);
+            updateMemberStmt.setDouble(2, accruedFine);
+            updateMemberStmt.setInt(3, memberId);
+            updateMemberStmt.executeUpdate();
+        }
+        
+        // Update book availability
+        String updateBookSql = "UPDATE books SET available_copies = available_copies + 1, available = TRUE WHERE id = ?";
+        try (PreparedStatement updateBookStmt = conn.prepareStatement(updateBookSql)) {
             updateBookStmt.setInt(1, bookId);
             updateBookStmt.executeUpdate();
-            
-            // Calculate fine if overdue
-            Timestamp dueDate = rs.getTimestamp("due_date");
-            Timestamp now = new Timestamp(System.currentTimeMillis());
-            double fineAmount = 0.0;
-            
-            if (now.after(dueDate)) {
-                long diffInMillies = now.getTime() - dueDate.getTime();
-                long diffInDays = diffInMillies / (24 * 60 * 60 * 1000);
-                fineAmount = diffInDays * 1.0; // $1 per day
-            }
-            
-            // Mark book as returned and record fine
-            String returnSql = "UPDATE borrow_records SET return_date = ?, fine_amount = ? WHERE id = ?";
-            PreparedStatement returnStmt = conn.prepareStatement(returnSql);
+        }
+        
+        // Mark book as returned and record fine
+        String returnSql = "UPDATE borrow_records SET return_date = ?, fine_amount = ? WHERE id = ?";
+        try (PreparedStatement returnStmt = conn.prepareStatement(returnSql)) {
             returnStmt.setTimestamp(1, now);
             returnStmt.setDouble(2, fineAmount);
             returnStmt.setInt(3, borrowId);
             returnStmt.executeUpdate();
-            
-            // Update member's fine amount if needed
-            if (fineAmount > 0) {
-                String updateMemberSql = "UPDATE members SET fine_amount = fine_amount + ? WHERE id = ?";
-                PreparedStatement updateMemberStmt = conn.prepareStatement(updateMemberSql);
-                updateMemberStmt.setDouble(1, fineAmount);
-                updateMemberStmt.setInt(2, memberId);
-                updateMemberStmt.executeUpdate();
+        }
+        return new LoanOutcome(bookId, memberId, borrowId, fineAmount, LoanOutcome.Status.OK, null);
+    }
+    
+    private void returnCommitted(LoanOutcome outcome) {
+        if (!outcome.isSuccess()) {
+            return;
+        }
+        int bookId = outcome.getBookId();
+        int borrowId = outcome.getBorrowId();
+        double fineAmount = outcome.getFineAmount();
+        bookCache.invalidate(bookId);
+        availability.copyReturned(bookId);
+        reminders.loanClosed(borrowId);
+        TransactionJournal.record(TransactionJournal.EventType.RETURN, bookId, outcome.getMemberId(), borrowId, 1);
+        if (fineAmount > 0) {
+            TransactionJournal.record(TransactionJournal.EventType.FINE_ACCRUED, bookId, outcome.getMemberId(), borrowId,
+                    Math.round(fineAmount * 100));
+        }
+        if (fineAmount > 0) {
+            logger.info("Book returned successfully with borrow ID: {} with fine: ${}", borrowId, fineAmount);
+        } else {
+            logger.info("Book returned successfully with borrow ID: {}", borrowId);
+        }
+    }
+    
+    // Check out several books in one transaction. Items are taken in list order until the member's
+    // max_books_allowed is reached; the result has one outcome per requested book, in the same order.
+    public List<LoanOutcome> borrowBooks(Member member, List<Book> books) {
+        List<LoanOutcome> outcomes = new ArrayList<>(books.size());
+        if (books.isEmpty()) {
+            return outcomes;
+        }
+        LoanOutcome[] decided;
+        try {
+            decided = transactions.execute("borrowBooks", conn -> borrowBooksInTransaction(conn, member, books));
+        } catch (SQLException e) {
+            logger.error("Error borrowing books for member: " + member.getName(), e);
+            for (Book book : books) {
+                outcomes.add(new LoanOutcome(book.getId(), 0, LoanOutcome.Status.ERROR, e.getMessage()));
             }
-            
-            conn.commit();
-            logger.info("Book returned successfully with borrow ID: " + borrowId + (fineAmount > 0 ? " with fine: $" + fineAmount : ""));
-            return true;
+            return outcomes;
+        }
+        
+        if (decided[0].getStatus() == LoanOutcome.Status.MEMBER_INACTIVE) {
+            logger.error("Checkout refused: {}", decided[0].getMessage());
+            Collections.addAll(outcomes, decided);
+            return outcomes;
+        }
+        int count = 0;
+        for (LoanOutcome outcome : decided) {
+            outcomes.add(outcome);
+            if (outcome.isSuccess()) {
+                bookCache.invalidate(outcome.getBookId());
+                availability.invalidate(outcome.getBookId());
+                member.loanOpened();
+                reminders.loanOpened(outcome.getBorrowId(), member.getId(), outcome.getBookId(), outcome.getDueDate());
+                TransactionJournal.record(TransactionJournal.EventType.BORROW, outcome.getBookId(), member.getId(),
+                        outcome.getBorrowId(), 1);
+                count++;
+            }
+        }
+        logger.info("Checkout for {}: {} of {} books borrowed", member.getName(), count, books.size());
+        return outcomes;
+    }
+    
+    private LoanOutcome[] borrowBooksInTransaction(Connection conn, Member member, List<Book> books) throws SQLException {
+        LoanOutcome[] decided = new LoanOutcome[books.size()];
+        
+        // Locking the member row serializes concurrent checkouts for the same member, so the limit holds
+        int remaining;
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT active, max_books_allowed, active_loans FROM members WHERE id = ? FOR UPDATE")) {
+            pstmt.setInt(1, member.getId());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next() || !rs.getBoolean("active")) {
+                    String reason = "Member " + member.getId() + " is missing or inactive";
+                    for (int i = 0; i < books.size(); i++) {
+                        decided[i] = new LoanOutcome(books.get(i).getId(), 0, LoanOutcome.Status.MEMBER_INACTIVE, reason);
+                    }
+                    return decided;
+                }
+                remaining = rs.getInt("max_books_allowed") - rs.getInt("active_loans");
+            }
+        }
+        
+        // Lock the requested books in id order (a fixed order avoids deadlocks between desks)
+        Map<Integer, Integer> availableCopies = new HashMap<>();
+        List<Integer> bookIds = new ArrayList<>();
+        for (Book book : books) {
+            bookIds.add(book.getId());
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT id, available_copies FROM books WHERE id IN (" +
+                placeholders(bookIds.size()) + ") ORDER BY id FOR UPDATE")) {
+            for (int i = 0; i < bookIds.size(); i++) {
+                pstmt.setInt(i + 1, bookIds.get(i));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    availableCopies.put(rs.getInt(1), rs.getInt(2));
+                }
+            }
+        }
+        
+        // Decide every item up front from the locked rows, then apply the accepted ones as batches
+        List<Integer> accepted = new ArrayList<>();
+        for (int i = 0; i < books.size(); i++) {
+            Book book = books.get(i);
+            Integer copies = availableCopies.get(book.getId());
+            if (copies == null) {
+                decided[i] = new LoanOutcome(book.getId(), 0, LoanOutcome.Status.NOT_FOUND, "No such book");
+            } else if (copies <= 0) {
+                decided[i] = new LoanOutcome(book.getId(), 0, LoanOutcome.Status.NOT_AVAILABLE, "No available copies");
+            } else if (accepted.size() >= remaining) {
+                decided[i] = new LoanOutcome(book.getId(), 0, LoanOutcome.Status.LIMIT_REACHED,
+                        "Member may not borrow more books");
+            } else {
+                availableCopies.put(book.getId(), copies - 1);
+                accepted.add(i);
+            }
+        }
+        if (accepted.isEmpty()) {
+            return decided;
+        }
+        
+        try (PreparedStatement updateBooks = conn.prepareStatement(
+                "UPDATE books SET available_copies = available_copies - 1, " +
+                "available = CASE WHEN available_copies - 1 > 0 THEN TRUE ELSE FALSE END WHERE id = ?");
+             PreparedStatement insertLoans = conn.prepareStatement(
+                "INSERT INTO borrow_records (member_id, book_id, due_date) VALUES (?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement claimLoans = conn.prepareStatement(
+                "UPDATE members SET active_loans = active_loans + ? WHERE id = ?")) {
+            Timestamp dueDate = dueDateFrom(new Timestamp(System.currentTimeMillis()));
+            for (int i : accepted) {
+                updateBooks.setInt(1, books.get(i).getId());
+                updateBooks.addBatch();
+                insertLoans.setInt(1, member.getId());
+                insertLoans.setInt(2, books.get(i).getId());
+                insertLoans.setTimestamp(3, dueDate);
+                insertLoans.addBatch();
+            }
+            updateBooks.executeBatch();
+            insertLoans.executeBatch();
+            claimLoans.setInt(1, accepted.size());
+            claimLoans.setInt(2, member.getId());
+            claimLoans.executeUpdate();
+            try (ResultSet keys = insertLoans.getGeneratedKeys()) {
+                for (int i : accepted) {
+                    int borrowId = keys.next() ? keys.getInt(1) : 0;
+                    decided[i] = new LoanOutcome(books.get(i).getId(), member.getId(), borrowId, 0.0, dueDate,
+                            LoanOutcome.Status.OK, null);
+                }
+            }
+        }
+        return decided;
+    }
+    
+    // Return several loans in one transaction; one outcome per borrow id, in the same order
+    public List<LoanOutcome> returnBooks(List<Integer> borrowIds) {
+        List<LoanOutcome> outcomes = new ArrayList<>(borrowIds.size());
+        if (borrowIds.isEmpty()) {
+            return outcomes;
+        }
+        LoanOutcome[] decided;
+        try {
+            decided = transactions.execute("returnBooks", conn -> returnBooksInTransaction(conn, borrowIds));
         } catch (SQLException e) {
-            try {
-                if (conn != null) {
-                    conn.rollback();
+            logger.error("Error returning books: " + borrowIds, e);
+            for (int borrowId : borrowIds) {
+                outcomes.add(new LoanOutcome(0, borrowId, LoanOutcome.Status.ERROR, e.getMessage()));
+            }
+            return outcomes;
+        }
+        
+        int count = 0;
+        for (LoanOutcome outcome : decided) {
+            outcomes.add(outcome);
+            if (!outcome.isSuccess()) {
+                continue;
+            }
+            bookCache.invalidate(outcome.getBookId());
+            availability.invalidate(outcome.getBookId());
+            reminders.loanClosed(outcome.getBorrowId());
+            TransactionJournal.record(TransactionJournal.EventType.RETURN, outcome.getBookId(), outcome.getMemberId(),
+                    outcome.getBorrowId(), 1);
+            if (outcome.getFineAmount() > 0) {
+                TransactionJournal.record(TransactionJournal.EventType.FINE_ACCRUED, outcome.getBookId(),
+                        outcome.getMemberId(), outcome.getBorrowId(), Math.round(outcome.getFineAmount() * 100));
+            }
+            count++;
+        }
+        logger.info("Returned {} of {} loans in one transaction", count, borrowIds.size());
+        return outcomes;
+    }
+    
+    private LoanOutcome[] returnBooksInTransaction(Connection conn, List<Integer> borrowIds) throws SQLException {
+        // Open loans among the requested ids, locked until commit
+        Map<Integer, int[]> openLoans = new HashMap<>();
+        Map<Integer, Timestamp> dueDates = new HashMap<>();
+        Map<Integer, Double> accruedFines = new HashMap<>();
+        Map<Integer, FinePolicy> policies = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT b.id, b.book_id, b.member_id, b.due_date, b.accrued_fine, m.member_type " +
+                "FROM borrow_records b JOIN members m ON m.id = b.member_id WHERE b.id IN (" +
+                placeholders(borrowIds.size()) + ") AND b.return_date IS NULL ORDER BY b.id FOR UPDATE OF b")) {
+            for (int i = 0; i < borrowIds.size(); i++) {
+                pstmt.setInt(i + 1, borrowIds.get(i));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    openLoans.put(rs.getInt("id"), new int[]{rs.getInt("book_id"), rs.getInt("member_id")});
+                    dueDates.put(rs.getInt("id"), rs.getTimestamp("due_date"));
+                    accruedFines.put(rs.getInt("id"), rs.getDouble("accrued_fine"));
+                    policies.put(rs.getInt("id"), FinePolicy.forMemberType(rs.getString("member_type")));
                 }
-            } catch (SQLException ex) {
-                logger.error("Error rolling back transaction", ex);
             }
-            logger.error("Error returning book with borrow ID: " + borrowId, e);
-            return false;
-        } finally {
-            try {
-                if (conn != null) {
-                    conn.setAutoCommit(true);
-                    conn.close();
+        }
+        
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        // {loans closed, fine, accrued fine released} per member, in id order so concurrent batches lock alike
+        Map<Integer, double[]> byMember = new TreeMap<>();
+        // Books are updated in id order, like borrowBooks locks them, so concurrent batches cannot deadlock
+        List<Integer> returnedBookIds = new ArrayList<>();
+        LoanOutcome[] decided = new LoanOutcome[borrowIds.size()];
+        try (PreparedStatement updateBooks = conn.prepareStatement(
+                "UPDATE books SET available_copies = available_copies + 1, available = TRUE WHERE id = ?");
+             PreparedStatement closeLoans = conn.prepareStatement(
+                "UPDATE borrow_records SET return_date = ?, fine_amount = ? WHERE id = ?");
+             PreparedStatement chargeMembers = conn.prepareStatement(
+                "UPDATE members SET active_loans = GREATEST(active_loans - ?, 0), fine_amount = fine_amount + ?, " +
+                "accrued_fines = GREATEST(accrued_fines - ?, 0) WHERE id = ?")) {
+            for (int i = 0; i < borrowIds.size(); i++) {
+                int borrowId = borrowIds.get(i);
+                // remove() also guards against the same id appearing twice in the request
+                int[] loan = openLoans.remove(borrowId);
+                if (loan == null) {
+                    decided[i] = new LoanOutcome(0, borrowId, LoanOutcome.Status.ALREADY_RETURNED,
+                            "Borrow record not found or book already returned");
+                    continue;
                 }
-            } catch (SQLException e) {
-                logger.error("Error closing connection", e);
+                double fine = policies.get(borrowId).fineFor(dueDates.get(borrowId), now);
+                decided[i] = new LoanOutcome(loan[0], loan[1], borrowId, fine, LoanOutcome.Status.OK,
+                        fine > 0 ? "Fine: $" + fine : null);
+                returnedBookIds.add(loan[0]);
+                closeLoans.setTimestamp(1, now);
+                closeLoans.setDouble(2, fine);
+                closeLoans.setInt(3, borrowId);
+                closeLoans.addBatch();
+                double[] memberTotals = byMember.computeIfAbsent(loan[1], id -> new double[3]);
+                memberTotals[0]++;
+                memberTotals[1] += fine;
+                memberTotals[2] += accruedFines.get(borrowId);
+            }
+            // Members before books, the same lock order as the borrow paths
+            for (Map.Entry<Integer, double[]> member : byMember.entrySet()) {
+                chargeMembers.setInt(1, (int) member.getValue()[0]);
+                chargeMembers.setDouble(2, member.getValue()[1]);
+                chargeMembers.setDouble(3, member.getValue()[2]);
+                chargeMembers.setInt(4, member.getKey());
+                chargeMembers.addBatch();
             }
+            if (!byMember.isEmpty()) {
+                chargeMembers.executeBatch();
+            }
+            Collections.sort(returnedBookIds);
+            for (int bookId : returnedBookIds) {
+                updateBooks.setInt(1, bookId);
+                updateBooks.addBatch();
+            }
+            updateBooks.executeBatch();
+            closeLoans.executeBatch();
+        }
+        return decided;
+    }
+    
+    // Extend one loan by another loan period. Refused once the loan is overdue or has been renewed
+    // BorrowRecord.MAX_RENEWAL_COUNT times.
+    public LoanOutcome renewLoan(int borrowId) {
+        LoanOutcome[] decided = renewLoans("renewLoan", "b.id = ?", borrowId);
+        if (decided == null) {
+            return new LoanOutcome(0, borrowId, LoanOutcome.Status.ERROR, "Renewal failed");
+        }
+        if (decided.length == 0) {
+            logger.error("Borrow record not found or book already returned: {}", borrowId);
+            return new LoanOutcome(0, borrowId, LoanOutcome.Status.ALREADY_RETURNED,
+                    "Borrow record not found or book already returned");
+        }
+        return decided[0];
+    }
+    
+    // Renew all of the member's open loans in one transaction, e.g. at term end; one outcome per open loan,
+    // in loan id order, and empty if the member has none. Null when the transaction failed and nothing was renewed.
+    public List<LoanOutcome> renewLoans(int memberId) {
+        LoanOutcome[] decided = renewLoans("renewLoans", "b.member_id = ?", memberId);
+        if (decided == null) {
+            return null;
+        }
+        List<LoanOutcome> outcomes = new ArrayList<>(decided.length);
+        Collections.addAll(outcomes, decided);
+        return outcomes;
+    }
+    
+    // Null when the transaction failed
+    private LoanOutcome[] renewLoans(String operation, String scope, int key) {
+        LoanOutcome[] decided;
+        try {
+            decided = transactions.execute(operation, conn -> renewInTransaction(conn, scope, key));
+        } catch (SQLException e) {
+            logger.error("Error renewing loans where " + scope.replace("?", String.valueOf(key)), e);
+            return null;
+        }
+        
+        int count = 0;
+        for (LoanOutcome outcome : decided) {
+            if (!outcome.isSuccess()) {
+                continue;
+            }
+            reminders.loanRenewed(outcome.getBorrowId(), outcome.getMemberId(), outcome.getBookId(), outcome.getDueDate());
+            TransactionJournal.record(TransactionJournal.EventType.RENEWAL, outcome.getBookId(), outcome.getMemberId(),
+                    outcome.getBorrowId(), outcome.getDueDate().getTime());
+            count++;
+        }
+        logger.info("Renewed {} of {} loans", count, decided.length);
+        return decided;
+    }
+    
+    // Renews the open loans matching scope (a predicate on borrow_records b with one parameter)
+    private LoanOutcome[] renewInTransaction(Connection conn, String scope, int key) throws SQLException {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        Timestamp newDueDate = dueDateFrom(now);
+        
+        // Lock the loans first so the outcomes reported below are exactly the rows the UPDATE changes
+        List<LoanOutcome> decided = new ArrayList<>();
+        int renewable = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT b.id, b.book_id, b.member_id, b.due_date, b.renewal_count FROM borrow_records b " +
+                "WHERE " + scope + " AND b.return_date IS NULL ORDER BY b.id FOR UPDATE")) {
+            pstmt.setInt(1, key);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int borrowId = rs.getInt("id");
+                    int bookId = rs.getInt("book_id");
+                    int memberId = rs.getInt("member_id");
+                    Timestamp dueDate = rs.getTimestamp("due_date");
+                    if (rs.getInt("renewal_count") >= BorrowRecord.MAX_RENEWAL_COUNT) {
+                        decided.add(new LoanOutcome(bookId, memberId, borrowId, 0.0, dueDate,
+                                LoanOutcome.Status.RENEWAL_LIMIT_REACHED, "Loan may not be renewed again"));
+                    } else if (dueDate.before(now)) {
+                        decided.add(new LoanOutcome(bookId, memberId, borrowId, 0.0, dueDate,
+                                LoanOutcome.Status.OVERDUE, "Overdue loans cannot be renewed"));
+                    } else {
+                        decided.add(new LoanOutcome(bookId, memberId, borrowId, 0.0, newDueDate,
+                                LoanOutcome.Status.OK, null));
+                        renewable++;
+                    }
+                }
+            }
+        }
+        if (renewable == 0) {
+            return decided.toArray(new LoanOutcome[0]);
+        }
+        
+        // The rules are repeated in the UPDATE itself, so every eligible loan is renewed by one statement
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "UPDATE borrow_records b SET b.due_date = ?, b.renewed = TRUE, b.renewal_count = b.renewal_count + 1, " +
+                "b.reminder_phase = 0 " +
+                "WHERE " + scope + " AND b.return_date IS NULL AND b.renewal_count < ? AND b.due_date >= ?")) {
+            pstmt.setTimestamp(1, newDueDate);
+            pstmt.setInt(2, key);
+            pstmt.setInt(3, BorrowRecord.MAX_RENEWAL_COUNT);
+            pstmt.setTimestamp(4, now);
+            int updated = pstmt.executeUpdate();
+            if (updated != renewable) {
+                throw new SQLException("Renewal updated " + updated + " loans, expected " + renewable);
+            }
+        }
+        return decided.toArray(new LoanOutcome[0]);
+    }
+    
+    // End of a loan period starting at the given time; borrows and renewals share BorrowRecord's loan period
+    private static Timestamp dueDateFrom(Timestamp start) {
+        return new Timestamp(BorrowRecord.calculateDueDate(start).getTime());
+    }
+    
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder(count * 3);
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
         }
+        return sb.toString();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,381 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Due-soon and overdue reminders for open loans, kept in a hierarchical timing wheel instead of polling
+// borrow_records. Four levels of 64 slots cover 64^4 ticks (about 30 years at the default one-minute tick);
+// each loan is one node on an intrusive doubly linked slot list, so scheduling and cancelling are O(1), and a
+// tick only touches the slot it lands on plus, every 64 ticks, one slot of the next level that is cascaded down.
+// Each loan has one pending event at a time: first DUE_SOON, then OVERDUE, after which it is dropped.
+// The last reminder sent is stored in borrow_records.reminder_phase, so reminders that fell due while the
+// process was down are sent on the first tick after startup, and none is sent twice across restarts.
+public class DueDateReminders {
+    private static final Logger logger = Logger.getInstance("database");
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    // Furthest distance, in ticks, the wheel can hold exactly; later deadlines park in the top level and re-cascade
+    private static final long SPAN = 1L << (SLOT_BITS * LEVELS);
+
+    private static final byte DUE_SOON = 0;
+    private static final byte OVERDUE = 1;
+
+    private final ReminderConfig config;
+    private volatile ReminderNotifier notifier;
+
+    // Guarded by this
+    private final Node[] slots = new Node[SLOTS * LEVELS];
+    private final Map<Integer, Node> byLoan = new HashMap<>();
+    private long currentTick;
+    // Loans closed while the startup load is running, so the load does not bring them back
+    private Set<Integer> closedDuringLoad;
+    private ScheduledExecutorService ticker;
+
+    // Statistics
+    private final AtomicLong scheduled = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong dueSoonSent = new AtomicLong();
+    private final AtomicLong overdueSent = new AtomicLong();
+    private final AtomicLong cascaded = new AtomicLong();
+    private final AtomicLong notifierErrors = new AtomicLong();
+
+    public DueDateReminders(ReminderConfig config, ReminderNotifier notifier) {
+        this.config = config;
+        this.notifier = notifier;
+        this.currentTick = System.currentTimeMillis() / config.tickMillis;
+    }
+
+    public static DueDateReminders fromSystemProperties() {
+        ReminderConfig config = ReminderConfig.fromSystemProperties();
+        return new DueDateReminders(config, config.createSink());
+    }
+
+    public void setNotifier(ReminderNotifier notifier) {
+        this.notifier = notifier;
+    }
+
+    public boolean isEnabled() {
+        return config.enabled;
+    }
+
+    // Load the open loans and start ticking; loans opened or closed meanwhile are tracked as usual
+    public synchronized void start() {
+        if (!config.enabled || ticker != null) {
+            return;
+        }
+        closedDuringLoad = new HashSet<>();
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "lms-due-date-reminders");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.execute(this::loadOpenLoans);
+        ticker.scheduleAtFixedRate(() -> {
+            try {
+                advanceTo(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                logger.error("Due-date reminder tick failed", e);
+            }
+        }, config.tickMillis, config.tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void shutdown() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+    }
+
+    public void loanOpened(int loanId, int memberId, int bookId, Date dueDate) {
+        if (config.enabled && dueDate != null) {
+            schedule(loanId, memberId, bookId, dueDate.getTime(), DUE_SOON, true);
+        }
+    }
+
+    // The due date moved; reminders start over from the new date (the renewal resets reminder_phase)
+    public void loanRenewed(int loanId, int memberId, int bookId, Date newDueDate) {
+        loanOpened(loanId, memberId, bookId, newDueDate);
+    }
+
+    public synchronized void loanClosed(int loanId) {
+        if (!config.enabled) {
+            return;
+        }
+        if (closedDuringLoad != null) {
+            closedDuringLoad.add(loanId);
+        }
+        Node node = byLoan.remove(loanId);
+        if (node != null) {
+            unlink(node);
+            cancelled.incrementAndGet();
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return byLoan.size();
+    }
+
+    // Schedule the loan's next reminder; one whose deadline has already passed goes out on the next tick
+    private synchronized void schedule(int loanId, int memberId, int bookId, long dueMillis, byte phase,
+                                       boolean replace) {
+        Node existing = byLoan.get(loanId);
+        if (existing != null) {
+            if (!replace) {
+                return;
+            }
+            unlink(existing);
+            byLoan.remove(loanId);
+        }
+        Node node = new Node(loanId, memberId, bookId, dueMillis, phase);
+        byLoan.put(loanId, node);
+        place(node);
+        scheduled.incrementAndGet();
+    }
+
+    private void loadOpenLoans() {
+        long start = System.currentTimeMillis();
+        long loaded = 0;
+        // reminder_phase counts the reminders already sent: 0 none, 1 due soon, 2 overdue too
+        String sql = "SELECT id, member_id, book_id, due_date, reminder_phase FROM borrow_records " +
+                "WHERE return_date IS NULL AND reminder_phase < 2";
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            pstmt.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int loanId = rs.getInt("id");
+                    synchronized (this) {
+                        if (closedDuringLoad.contains(loanId)) {
+                            continue;
+                        }
+                        schedule(loanId, rs.getInt("member_id"), rs.getInt("book_id"),
+                                rs.getTimestamp("due_date").getTime(), (byte) rs.getInt("reminder_phase"), false);
+                    }
+                    loaded++;
+                }
+            }
+            logger.info("Due-date reminders loaded: {} open loans in {}ms", loaded, System.currentTimeMillis() - start);
+        } catch (SQLException e) {
+            logger.error("Failed to load open loans for due-date reminders", e);
+        } finally {
+            synchronized (this) {
+                closedDuringLoad = null;
+            }
+        }
+    }
+
+    // Run every tick up to the given time, then send what fell due outside the lock
+    void advanceTo(long nowMillis) {
+        List<ReminderNotifier.Reminder> due = new ArrayList<>();
+        synchronized (this) {
+            long target = nowMillis / config.tickMillis;
+            while (currentTick < target) {
+                currentTick++;
+                tick(due);
+            }
+        }
+        ReminderNotifier sink = notifier;
+        if (sink == null || due.isEmpty()) {
+            return;
+        }
+        List<ReminderNotifier.Reminder> sent = new ArrayList<>(due.size());
+        for (ReminderNotifier.Reminder reminder : due) {
+            try {
+                sink.send(reminder);
+                sent.add(reminder);
+            } catch (RuntimeException e) {
+                notifierErrors.incrementAndGet();
+                logger.error("Reminder notifier failed for loan " + reminder.getLoanId(), e);
+            }
+        }
+        recordSent(sent);
+    }
+
+    // Remember what went out, so a restart neither repeats nor skips it. Matching on the due date keeps a
+    // reminder for the old date from overwriting the reset done by a renewal that raced with it.
+    private void recordSent(List<ReminderNotifier.Reminder> sent) {
+        if (sent.isEmpty()) {
+            return;
+        }
+        String sql = "UPDATE borrow_records SET reminder_phase = GREATEST(reminder_phase, ?) " +
+                "WHERE id = ? AND ABS(TIMESTAMPDIFF(SECOND, due_date, ?)) <= 1";
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (ReminderNotifier.Reminder reminder : sent) {
+                pstmt.setInt(1, reminder.getType() == ReminderNotifier.Reminder.Type.DUE_SOON ? 1 : 2);
+                pstmt.setInt(2, reminder.getLoanId());
+                pstmt.setTimestamp(3, reminder.getDueDate());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        } catch (SQLException e) {
+            // The reminders were sent; at worst they are sent again after a restart
+            logger.error("Failed to record " + sent.size() + " sent reminders", e);
+        }
+    }
+
+    private void tick(List<ReminderNotifier.Reminder> due) {
+        // At each level boundary, pull the next slot of the level above down into the finer levels
+        int levels = 0;
+        while (levels < LEVELS - 1 && ((currentTick >>> (SLOT_BITS * levels)) & SLOT_MASK) == 0) {
+            levels++;
+        }
+        for (int level = levels; level >= 1; level--) {
+            int index = level * SLOTS + (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+            Node node = slots[index];
+            slots[index] = null;
+            while (node != null) {
+                Node next = node.next;
+                node.prev = node.next = null;
+                // Deadlines on this very tick fire now rather than one tick late
+                fire(node, due);
+                cascaded.incrementAndGet();
+                node = next;
+            }
+        }
+
+        int index = (int) (currentTick & SLOT_MASK);
+        Node node = slots[index];
+        slots[index] = null;
+        while (node != null) {
+            Node next = node.next;
+            node.prev = node.next = null;
+            fire(node, due);
+            node = next;
+        }
+    }
+
+    // Send the node's event if its deadline has come, otherwise put it back in the slot it now belongs to
+    private void fire(Node node, List<ReminderNotifier.Reminder> due) {
+        if (deadlineTick(node) > currentTick) {
+            place(node);
+            return;
+        }
+        if (node.phase == DUE_SOON) {
+            due.add(new ReminderNotifier.Reminder(ReminderNotifier.Reminder.Type.DUE_SOON, node.loanId,
+                    node.memberId, node.bookId, node.dueMillis));
+            dueSoonSent.incrementAndGet();
+            node.phase = OVERDUE;
+            place(node);
+        } else {
+            due.add(new ReminderNotifier.Reminder(ReminderNotifier.Reminder.Type.OVERDUE, node.loanId,
+                    node.memberId, node.bookId, node.dueMillis));
+            overdueSent.incrementAndGet();
+            byLoan.remove(node.loanId);
+        }
+    }
+
+    // First tick at or after the node's current deadline
+    private long deadlineTick(Node node) {
+        long deadline = node.phase == DUE_SOON ? node.dueMillis - config.dueSoonMillis : node.dueMillis;
+        return (deadline + config.tickMillis - 1) / config.tickMillis;
+    }
+
+    private void place(Node node) {
+        long expires = Math.max(deadlineTick(node), currentTick + 1);
+        long delta = Math.min(expires - currentTick, SPAN - 1);
+        expires = currentTick + delta;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int index = level * SLOTS + (int) ((expires >>> (SLOT_BITS * level)) & SLOT_MASK);
+        Node head = slots[index];
+        node.slot = (short) index;
+        node.prev = null;
+        node.next = head;
+        if (head != null) {
+            head.prev = node;
+        }
+        slots[index] = node;
+    }
+
+    private void unlink(Node node) {
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else if (slots[node.slot] == node) {
+            slots[node.slot] = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        }
+        node.prev = node.next = null;
+    }
+
+    public String getStats() {
+        return String.format("pending=%d, scheduled=%d, cancelled=%d, dueSoonSent=%d, overdueSent=%d, cascaded=%d, " +
+                        "notifierErrors=%d", getPendingCount(), scheduled.get(), cancelled.get(), dueSoonSent.get(),
+                overdueSent.get(), cascaded.get(), notifierErrors.get());
+    }
+
+    public void logStats() {
+        logger.info("Due-date reminders: {}", getStats());
+    }
+
+    // One scheduled loan; the deadline tick is derived from dueMillis and phase rather than stored
+    private static final class Node {
+        final int loanId;
+        final int memberId;
+        final int bookId;
+        final long dueMillis;
+        byte phase;
+        short slot;
+        Node prev;
+        Node next;
+
+        Node(int loanId, int memberId, int bookId, long dueMillis, byte phase) {
+            this.loanId = loanId;
+            this.memberId = memberId;
+            this.bookId = bookId;
+            this.dueMillis = dueMillis;
+            this.phase = phase;
+        }
+    }
+
+    public static class ReminderConfig {
+        boolean enabled = true;
+        long tickMillis = 60_000;
+        long dueSoonMillis = TimeUnit.DAYS.toMillis(2);
+        // console, file or none
+        String sink = "file";
+        String file = "logs/reminders.log";
+
+        // Each setting can be overridden with -Dlms.reminders.<name>=<value> (dueSoonHours for the due-soon window)
+        static ReminderConfig fromSystemProperties() {
+            ReminderConfig config = new ReminderConfig();
+            config.enabled = Boolean.parseBoolean(System.getProperty("lms.reminders.enabled", String.valueOf(config.enabled)));
+            config.tickMillis = Math.max(1, Long.getLong("lms.reminders.tickMillis", config.tickMillis));
+            config.dueSoonMillis = TimeUnit.HOURS.toMillis(Math.max(0, Long.getLong("lms.reminders.dueSoonHours",
+                    TimeUnit.MILLISECONDS.toHours(config.dueSoonMillis))));
+            config.sink = System.getProperty("lms.reminders.sink", config.sink);
+            config.file = System.getProperty("lms.reminders.file", config.file);
+            return config;
+        }
+
+        ReminderNotifier createSink() {
+            switch (sink) {
+                case "console":
+                    return new ReminderNotifier.ConsoleSink();
+                case "file":
+                    return new ReminderNotifier.FileSink(file);
+                default:
+                    return null;
+            }
+        }
+    }
+}
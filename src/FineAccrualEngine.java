@@ -0,0 +1,272 @@
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Nightly accrual of fines on loans that are overdue and still out.
+// Open loans are split into id ranges, and each range is one transaction on a worker pool: a few set-based
+// statements bring every overdue loan's accrued_fine up to what its member type's policy says it owes as of
+// midnight, and add the difference to the members' accrued_fines. Each loan remembers the day it was last
+// accrued, so re-running a day (after a crash, or twice by hand) changes nothing.
+public class FineAccrualEngine {
+    private static final Logger logger = Logger.getInstance("database");
+
+    // Fine owed as of the bound timestamp under the member type's policy; mirrors FinePolicy.fineFor
+    private static final String FINE_EXPRESSION =
+            "LEAST(GREATEST(TIMESTAMPDIFF(DAY, b.due_date, ?) - COALESCE(p.grace_days, 0), 0) * " +
+            "COALESCE(p.daily_rate, 1.0), COALESCE(NULLIF(p.max_fine, 0), 1e18))";
+    // Open, overdue and not yet accrued for the day, within one id range
+    private static final String CHUNK_PREDICATE = "b.id BETWEEN ? AND ? AND b.return_date IS NULL AND b.due_date < ? " +
+            "AND (b.fine_accrued_through IS NULL OR b.fine_accrued_through < ?)";
+    private static final String POLICY_JOIN = "JOIN members m ON m.id = b.member_id " +
+            "LEFT JOIN fine_policies p ON p.member_type = m.member_type";
+
+    private final AccrualConfig config;
+    private final TransactionRunner transactions;
+    private ScheduledExecutorService scheduler;
+
+    public FineAccrualEngine(AccrualConfig config, TransactionRunner transactions) {
+        this.config = config;
+        this.transactions = transactions;
+    }
+
+    public static FineAccrualEngine fromSystemProperties(TransactionRunner transactions) {
+        return new FineAccrualEngine(AccrualConfig.fromSystemProperties(), transactions);
+    }
+
+    public boolean isEnabled() {
+        return config.enabled;
+    }
+
+    // Run every day at the configured time
+    public synchronized void start() {
+        if (!config.enabled || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "lms-fine-accrual");
+            t.setDaemon(true);
+            return t;
+        });
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = LocalDate.now().atTime(config.runAt);
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                runFor(LocalDate.now());
+            } catch (RuntimeException e) {
+                logger.error("Scheduled fine accrual failed", e);
+            }
+        }, Duration.between(now, next).toMillis(), TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+        logger.info("Fine accrual scheduled daily at {}", config.runAt);
+    }
+
+    public synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    // Accrue fines as of the start of the given day; safe to call again for a day that already ran
+    public AccrualReport runFor(LocalDate day) {
+        long start = System.currentTimeMillis();
+        AccrualReport report = new AccrualReport(day);
+        Timestamp asOf = Timestamp.valueOf(day.atStartOfDay());
+        Date accrualDay = Date.valueOf(day);
+
+        int minId;
+        int maxId;
+        try (Connection conn = DBConnection.getConnection()) {
+            FinePolicy.load(conn);
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT MIN(id), MAX(id) FROM borrow_records WHERE return_date IS NULL AND due_date < ?")) {
+                pstmt.setTimestamp(1, asOf);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    rs.next();
+                    minId = rs.getInt(1);
+                    maxId = rs.getInt(2);
+                    if (rs.wasNull()) {
+                        logger.info("Fine accrual for {}: no overdue loans", day);
+                        return report;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Fine accrual for " + day + " could not start", e);
+            report.failedChunks++;
+            return report;
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(config.threads, r -> {
+            Thread t = new Thread(r, "lms-fine-accrual-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        List<Future<double[]>> chunks = new ArrayList<>();
+        try {
+            for (long from = minId; from <= maxId; from += config.chunkSize) {
+                int lo = (int) from;
+                int hi = (int) Math.min(maxId, from + config.chunkSize - 1);
+                chunks.add(workers.submit(() -> transactions.execute("fineAccrual",
+                        conn -> accrueChunk(conn, lo, hi, asOf, accrualDay))));
+            }
+            for (Future<double[]> chunk : chunks) {
+                try {
+                    double[] result = chunk.get();
+                    report.chunks++;
+                    report.loansAccrued += (long) result[0];
+                    report.finesAdded += result[1];
+                } catch (ExecutionException e) {
+                    report.failedChunks++;
+                    logger.error("Fine accrual chunk failed", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Fine accrual for {} interrupted", day);
+        } finally {
+            workers.shutdownNow();
+        }
+        report.millis = System.currentTimeMillis() - start;
+        logger.info("Fine accrual for {}", report);
+        return report;
+    }
+
+    // {loans accrued, fines added} for one id range, inside the caller's transaction
+    private static double[] accrueChunk(Connection conn, int fromId, int toId, Timestamp asOf, Date day)
+            throws SQLException {
+        // Lock the loans first so a concurrent return either finishes before us (and the loan drops out)
+        // or waits and then sees the accrued amount it has to take back off the member
+        long loans = 0;
+        double added = 0.0;
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT " + FINE_EXPRESSION + " - b.accrued_fine " +
+                "FROM borrow_records b " + POLICY_JOIN + " WHERE " + CHUNK_PREDICATE + " FOR UPDATE OF b")) {
+            bindChunk(pstmt, 1, asOf, fromId, toId, day);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    loans++;
+                    added += rs.getDouble(1);
+                }
+            }
+        }
+        if (loans == 0) {
+            return new double[]{0, 0.0};
+        }
+
+        // Member totals move by the difference between what is owed now and what was accrued before
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE members mt JOIN (" +
+                "SELECT b.member_id, SUM(" + FINE_EXPRESSION + " - b.accrued_fine) AS delta " +
+                "FROM borrow_records b " + POLICY_JOIN + " WHERE " + CHUNK_PREDICATE + " GROUP BY b.member_id) d " +
+                "ON d.member_id = mt.id SET mt.accrued_fines = mt.accrued_fines + d.delta")) {
+            bindChunk(pstmt, 1, asOf, fromId, toId, day);
+            pstmt.executeUpdate();
+        }
+
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE borrow_records b " + POLICY_JOIN +
+                " SET b.accrued_fine = " + FINE_EXPRESSION + ", b.fine_accrued_through = ? WHERE " + CHUNK_PREDICATE)) {
+            pstmt.setTimestamp(1, asOf);
+            pstmt.setDate(2, day);
+            bindChunk(pstmt, 3, null, fromId, toId, day);
+            pstmt.executeUpdate();
+        }
+        return new double[]{loans, added};
+    }
+
+    // Binds [asOf for FINE_EXPRESSION,] then the CHUNK_PREDICATE parameters, starting at index
+    private static void bindChunk(PreparedStatement pstmt, int index, Timestamp fineAsOf, int fromId, int toId, Date day)
+            throws SQLException {
+        if (fineAsOf != null) {
+            pstmt.setTimestamp(index++, fineAsOf);
+        }
+        pstmt.setInt(index++, fromId);
+        pstmt.setInt(index++, toId);
+        pstmt.setTimestamp(index++, Timestamp.valueOf(day.toLocalDate().atStartOfDay()));
+        pstmt.setDate(index, day);
+    }
+
+    public static class AccrualReport {
+        private final LocalDate day;
+        private int chunks;
+        private int failedChunks;
+        private long loansAccrued;
+        private double finesAdded;
+        private long millis;
+
+        AccrualReport(LocalDate day) {
+            this.day = day;
+        }
+
+        public LocalDate getDay() {
+            return day;
+        }
+
+        public long getLoansAccrued() {
+            return loansAccrued;
+        }
+
+        public double getFinesAdded() {
+            return finesAdded;
+        }
+
+        // Chunks that failed are picked up by the next run of the same day
+        public boolean isComplete() {
+            return failedChunks == 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: chunks=%d, failed=%d, loans=%d, finesAdded=$%.2f, time=%dms",
+                    day, chunks, failedChunks, loansAccrued, finesAdded, millis);
+        }
+    }
+
+    public static class AccrualConfig {
+        boolean enabled = true;
+        int threads = 4;
+        int chunkSize = 20_000;
+        LocalTime runAt = LocalTime.of(2, 0);
+
+        // Each setting can be overridden with -Dlms.fines.<name>=<value> (runAt as HH:mm)
+        static AccrualConfig fromSystemProperties() {
+            AccrualConfig config = new AccrualConfig();
+            config.enabled = Boolean.parseBoolean(System.getProperty("lms.fines.enabled", String.valueOf(config.enabled)));
+            config.threads = Math.max(1, Integer.getInteger("lms.fines.threads", config.threads));
+            config.chunkSize = Math.max(100, Integer.getInteger("lms.fines.chunkSize", config.chunkSize));
+            config.runAt = LocalTime.parse(System.getProperty("lms.fines.runAt", config.runAt.toString()));
+            return config;
+        }
+    }
+
+    // Manual run: java FineAccrualEngine [yyyy-MM-dd]
+    public static void main(String[] args) {
+        LocalDate day = args.length > 0 ? LocalDate.parse(args[0]) : LocalDate.now();
+        FineAccrualEngine engine = new FineAccrualEngine(AccrualConfig.fromSystemProperties(),
+                TransactionRunner.fromSystemProperties());
+        try (Connection conn = DBConnection.getConnection()) {
+            SchemaMigrator.migrate(conn);
+        } catch (SQLException e) {
+            System.err.println("Could not prepare the database: " + e.getMessage());
+            System.exit(1);
+        }
+        AccrualReport report = engine.runFor(day);
+        System.out.println(report);
+        System.exit(report.isComplete() ? 0 : 1);
+    }
+}
@@ -0,0 +1,78 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Overdue fine rules for one member type, stored in fine_policies. Types without a row pay the default $1 per
+// full day overdue, uncapped. The same rule is applied in SQL by FineAccrualEngine and in Java at return time.
+public class FinePolicy {
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    public static final FinePolicy DEFAULT = new FinePolicy(1.0, 0, 0.0);
+
+    // Loaded policies by member type; refreshed by FineAccrualEngine before each run
+    private static final Map<String, FinePolicy> policies = new ConcurrentHashMap<>();
+
+    private final double dailyRate;
+    private final int graceDays;
+    // 0 means no cap
+    private final double maxFine;
+
+    public FinePolicy(double dailyRate, int graceDays, double maxFine) {
+        this.dailyRate = dailyRate;
+        this.graceDays = Math.max(0, graceDays);
+        this.maxFine = Math.max(0.0, maxFine);
+    }
+
+    public static FinePolicy forMemberType(String memberType) {
+        FinePolicy policy = memberType == null ? null : policies.get(memberType);
+        return policy != null ? policy : DEFAULT;
+    }
+
+    // Fine for a loan due at dueDate, assessed at asOf: whole days late beyond the grace period, times the rate
+    public double fineFor(Date dueDate, Date asOf) {
+        if (dueDate == null || asOf == null || !asOf.after(dueDate)) {
+            return 0.0;
+        }
+        long days = (asOf.getTime() - dueDate.getTime()) / DAY_MILLIS - graceDays;
+        if (days <= 0) {
+            return 0.0;
+        }
+        double fine = days * dailyRate;
+        return maxFine > 0 ? Math.min(fine, maxFine) : fine;
+    }
+
+    // Replaces the loaded policies with the contents of fine_policies
+    static void load(Connection conn) throws SQLException {
+        Map<String, FinePolicy> loaded = new ConcurrentHashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT member_type, daily_rate, grace_days, max_fine FROM fine_policies");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                loaded.put(rs.getString("member_type"), new FinePolicy(rs.getDouble("daily_rate"),
+                        rs.getInt("grace_days"), rs.getDouble("max_fine")));
+            }
+        }
+        policies.keySet().retainAll(loaded.keySet());
+        policies.putAll(loaded);
+    }
+
+    public double getDailyRate() {
+        return dailyRate;
+    }
+
+    public int getGraceDays() {
+        return graceDays;
+    }
+
+    public double getMaxFine() {
+        return maxFine;
+    }
+
+    @Override
+    public String toString() {
+        return "FinePolicy{dailyRate=" + dailyRate + ", graceDays=" + graceDays + ", maxFine=" + maxFine + "}";
+    }
+}
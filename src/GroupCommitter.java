@@ -0,0 +1,312 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Runs concurrent borrow and return requests together, committing a whole batch in one transaction.
+// A committer thread takes the first queued request, waits up to the window for more (or until the batch is full),
+// then runs each request under its own savepoint so a failed request rolls back alone. One commit, and one
+// log flush in InnoDB, then covers the batch. If the batch transaction itself fails, every request is retried
+// in its own transaction so one caller's deadlock never decides another caller's result.
+public class GroupCommitter {
+    private static final Logger logger = Logger.getInstance("database");
+    // Batch size histogram buckets: 1, 2-3, 4-7, 8-15, 16-31, 32-63, 64+
+    private static final int HISTOGRAM_BUCKETS = 7;
+
+    private final Config config;
+    private final TransactionRunner transactions;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final List<Thread> committers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    // Statistics, guarded by this
+    private long batches;
+    private long requests;
+    private long maxBatchSize;
+    private long totalQueueNanos;
+    private long maxQueueNanos;
+    private long totalCommitNanos;
+    private long fallbacks;
+    private final long[] batchSizeHistogram = new long[HISTOGRAM_BUCKETS];
+
+    public GroupCommitter(Config config, TransactionRunner transactions) {
+        this.config = config;
+        this.transactions = transactions;
+        for (int i = 0; i < config.committers; i++) {
+            Thread thread = new Thread(this::run, "lms-group-commit-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            committers.add(thread);
+        }
+    }
+
+    // Null unless -Dlms.groupCommit.enabled=true
+    public static GroupCommitter fromSystemProperties(TransactionRunner transactions) {
+        Config config = Config.fromSystemProperties();
+        return config.enabled ? new GroupCommitter(config, transactions) : null;
+    }
+
+    // Work runs inside the shared transaction and must not commit; afterCommit runs once the outcome is durable
+    public CompletableFuture<LoanOutcome> submit(String operation, TransactionRunner.Work<LoanOutcome> work,
+                                                 Consumer<LoanOutcome> afterCommit) {
+        Request request = new Request(operation, work, afterCommit);
+        if (!running) {
+            request.future.complete(new LoanOutcome(0, 0, LoanOutcome.Status.ERROR, "Group commit is shut down"));
+            return request.future;
+        }
+        queue.add(request);
+        return request.future;
+    }
+
+    // Stops the committers after they drain what is already queued
+    public void shutdown() {
+        running = false;
+        for (Thread thread : committers) {
+            thread.interrupt();
+        }
+        for (Thread thread : committers) {
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        logStats();
+    }
+
+    private void run() {
+        List<Request> batch = new ArrayList<>(config.maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Request first = running ? queue.take() : queue.poll();
+                if (first == null) {
+                    break;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(config.windowMicros);
+                while (batch.size() < config.maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Shutdown; fall through so anything already collected still runs
+            }
+            if (!batch.isEmpty()) {
+                execute(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void execute(List<Request> batch) {
+        long start = System.nanoTime();
+        recordQueueDelays(batch, start);
+        if (batch.size() == 1 || !runBatch(batch)) {
+            if (batch.size() > 1) {
+                synchronized (this) {
+                    fallbacks++;
+                }
+            }
+            for (Request request : batch) {
+                runAlone(request);
+            }
+        }
+        recordBatch(batch.size(), System.nanoTime() - start);
+    }
+
+    // True if every request has been completed: the batch committed, or its commit failed. False only when the
+    // batch failed before commit, so nothing was applied and each request may run again on its own.
+    private boolean runBatch(List<Request> batch) {
+        LoanOutcome[] outcomes = new LoanOutcome[batch.size()];
+        Connection conn = null;
+        boolean committing = false;
+        try {
+            conn = DBConnection.getConnection();
+            conn.setAutoCommit(false);
+            for (int i = 0; i < batch.size(); i++) {
+                Savepoint savepoint = conn.setSavepoint();
+                try {
+                    outcomes[i] = batch.get(i).work.run(conn);
+                    if (!outcomes[i].isSuccess()) {
+                        conn.rollback(savepoint);
+                    }
+                } catch (SQLException e) {
+                    if (isTransactionAborted(e)) {
+                        // The server already rolled back the whole transaction; savepoints are gone
+                        throw e;
+                    }
+                    conn.rollback(savepoint);
+                    // A lock wait timeout only undoes the statement; the request is retried on its own afterwards
+                    outcomes[i] = TransactionRunner.isRetryable(e) ? null
+                            : new LoanOutcome(0, 0, LoanOutcome.Status.ERROR, e.getMessage());
+                }
+                conn.releaseSavepoint(savepoint);
+            }
+            committing = true;
+            conn.commit();
+        } catch (SQLException e) {
+            if (committing) {
+                // The server may have applied the commit anyway; running the requests again could duplicate them
+                logger.error("Commit of a group of " + batch.size() + " loan requests failed; outcome unknown", e);
+                rollbackQuietly(conn);
+                closeQuietly(conn);
+                conn = null;
+                for (Request request : batch) {
+                    complete(request, new LoanOutcome(0, 0, LoanOutcome.Status.ERROR,
+                            "Commit failed, outcome unknown: " + e.getMessage()));
+                }
+                return true;
+            }
+            logger.info("Group commit of {} requests failed, retrying individually: {}", batch.size(), e.getMessage());
+            rollbackQuietly(conn);
+            return false;
+        } finally {
+            closeQuietly(conn);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            if (outcomes[i] != null) {
+                complete(batch.get(i), outcomes[i]);
+            } else {
+                runAlone(batch.get(i));
+            }
+        }
+        return true;
+    }
+
+    // Retried on deadlocks like any other transaction, so a request that lost in the batch gets its own chance
+    private void runAlone(Request request) {
+        LoanOutcome outcome;
+        try {
+            outcome = transactions.execute(request.operation, request.work, LoanOutcome::isSuccess);
+        } catch (SQLException e) {
+            logger.error("Error running loan request", e);
+            outcome = new LoanOutcome(0, 0, LoanOutcome.Status.ERROR, e.getMessage());
+        }
+        complete(request, outcome);
+    }
+
+    private void complete(Request request, LoanOutcome outcome) {
+        try {
+            request.afterCommit.accept(outcome);
+        } catch (RuntimeException e) {
+            logger.error("Error in post-commit handler", e);
+        }
+        request.future.complete(outcome);
+    }
+
+    // Deadlock victims (1213) and serialization failures lose the whole transaction, not just the statement
+    private static boolean isTransactionAborted(SQLException e) {
+        return e.getErrorCode() == 1213 || "40001".equals(e.getSQLState());
+    }
+
+    private static void rollbackQuietly(Connection conn) {
+        try {
+            if (conn != null) {
+                conn.rollback();
+            }
+        } catch (SQLException ex) {
+            logger.error("Error rolling back transaction", ex);
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            if (conn != null) {
+                conn.setAutoCommit(true);
+                conn.close();
+            }
+        } catch (SQLException e) {
+            logger.error("Error closing connection", e);
+        }
+    }
+
+    // Statistics
+    private synchronized void recordQueueDelays(List<Request> batch, long now) {
+        for (Request request : batch) {
+            long delay = now - request.enqueuedAt;
+            totalQueueNanos += delay;
+            maxQueueNanos = Math.max(maxQueueNanos, delay);
+        }
+    }
+
+    private synchronized void recordBatch(int size, long nanos) {
+        batches++;
+        requests += size;
+        maxBatchSize = Math.max(maxBatchSize, size);
+        totalCommitNanos += nanos;
+        batchSizeHistogram[Math.min(HISTOGRAM_BUCKETS - 1, 31 - Integer.numberOfLeadingZeros(size))]++;
+    }
+
+    public synchronized double getAverageBatchSize() {
+        return batches == 0 ? 0.0 : (double) requests / batches;
+    }
+
+    public synchronized double getAverageQueueDelayMillis() {
+        return requests == 0 ? 0.0 : totalQueueNanos / 1_000_000.0 / requests;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public synchronized String getStats() {
+        StringBuilder histogram = new StringBuilder();
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            if (i > 0) {
+                histogram.append(' ');
+            }
+            histogram.append(i == HISTOGRAM_BUCKETS - 1 ? (1 << i) + "+" : String.valueOf(1 << i))
+                    .append(':').append(batchSizeHistogram[i]);
+        }
+        return String.format("batches=%d, requests=%d, avgBatch=%.1f, maxBatch=%d, sizes=[%s], avgQueueDelay=%.2fms, " +
+                        "maxQueueDelay=%.2fms, avgBatchTime=%.2fms, fallbacks=%d, queued=%d", batches, requests,
+                getAverageBatchSize(), maxBatchSize, histogram, getAverageQueueDelayMillis(), maxQueueNanos / 1_000_000.0,
+                batches == 0 ? 0.0 : totalCommitNanos / 1_000_000.0 / batches, fallbacks, queue.size());
+    }
+
+    public void logStats() {
+        logger.info("Group commit: {}", getStats());
+    }
+
+    private static class Request {
+        private final String operation;
+        private final TransactionRunner.Work<LoanOutcome> work;
+        private final Consumer<LoanOutcome> afterCommit;
+        private final CompletableFuture<LoanOutcome> future = new CompletableFuture<>();
+        private final long enqueuedAt = System.nanoTime();
+
+        Request(String operation, TransactionRunner.Work<LoanOutcome> work, Consumer<LoanOutcome> afterCommit) {
+            this.operation = operation;
+            this.work = work;
+            this.afterCommit = afterCommit;
+        }
+    }
+
+    public static class Config {
+        boolean enabled = false;
+        long windowMicros = 2000;
+        int maxBatchSize = 64;
+        int committers = 1;
+
+        // Each setting can be overridden with -Dlms.groupCommit.<name>=<value>
+        static Config fromSystemProperties() {
+            Config config = new Config();
+            config.enabled = Boolean.parseBoolean(System.getProperty("lms.groupCommit.enabled", String.valueOf(config.enabled)));
+            config.windowMicros = Math.max(0, Long.getLong("lms.groupCommit.windowMicros", config.windowMicros));
+            config.maxBatchSize = Math.max(1, Integer.getInteger("lms.groupCommit.maxBatchSize", config.maxBatchSize));
+            config.committers = Math.max(1, Integer.getInteger("lms.groupCommit.committers", config.committers));
+            return config;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+// Replays or tails the transaction journal from any offset using memory-mapped segments
+public class JournalReader {
+    private final File directory;
+
+    public JournalReader() {
+        this(new File(TransactionJournal.JOURNAL_DIRECTORY));
+    }
+
+    public JournalReader(File directory) {
+        this.directory = directory;
+    }
+
+    // Deliver every complete record at or after fromOffset; returns the offset to resume from
+    public long replay(long fromOffset, Consumer<TransactionJournal.Event> consumer) throws IOException {
+        long offset = fromOffset;
+        File[] segments = TransactionJournal.listSegments(directory);
+        for (int i = 0; i < segments.length; i++) {
+            long base = TransactionJournal.parseBase(segments[i]);
+            long nextBase = i + 1 < segments.length ? TransactionJournal.parseBase(segments[i + 1]) : Long.MAX_VALUE;
+            if (offset >= nextBase) {
+                continue;
+            }
+            offset = replaySegment(segments[i], base, Math.max(offset, base), consumer);
+            // A torn record before the end of a sealed segment ends the readable journal
+            if (nextBase != Long.MAX_VALUE && offset < nextBase) {
+                break;
+            }
+        }
+        return offset;
+    }
+
+    private long replaySegment(File segment, long base, long fromOffset, Consumer<TransactionJournal.Event> consumer)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size() - channel.size() % TransactionJournal.RECORD_SIZE;
+            long startPosition = (fromOffset - base) * TransactionJournal.RECORD_SIZE;
+            if (startPosition >= size) {
+                return fromOffset;
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, startPosition, size - startPosition);
+            long offset = fromOffset;
+            for (int position = 0; position + TransactionJournal.RECORD_SIZE <= mapped.limit();
+                 position += TransactionJournal.RECORD_SIZE) {
+                TransactionJournal.Event event = TransactionJournal.decode(mapped, position);
+                if (event == null || event.getOffset() != offset) {
+                    break;
+                }
+                consumer.accept(event);
+                offset++;
+            }
+            return offset;
+        }
+    }
+
+    // Follow the journal as it grows until the thread is interrupted; returns the next unread offset
+    public long tail(long fromOffset, Consumer<TransactionJournal.Event> consumer, long pollMillis) throws IOException {
+        long offset = fromOffset;
+        while (!Thread.currentThread().isInterrupted()) {
+            long next = replay(offset, consumer);
+            if (next == offset) {
+                try {
+                    Thread.sleep(pollMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            offset = next;
+        }
+        return offset;
+    }
+}
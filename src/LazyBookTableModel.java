@@ -0,0 +1,199 @@
+import javax.swing.table.AbstractTableModel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Table model that knows the row count up front and loads pages of books only when they are displayed
+public class LazyBookTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    private static final String[] COLUMNS = {"ID", "Title", "Author", "Publisher", "Year", "Available"};
+    private static final String LOADING = "Loading...";
+
+    private final BookDataService dataService;
+    private final int pageSize;
+    private final int maxCachedPages;
+
+    // Everything below is only touched on the Event Dispatch Thread
+    private String titleFilter;
+    private String searchQuery;
+    private boolean fuzzy;
+    // Ranked ids of the current search; null when browsing the catalog in id order
+    private int[] searchResults;
+    private int rowCount;
+    private volatile int generation;
+    private final Map<Integer, List<Book>> pages;
+    // Last book id of each page seen so far, so the next page can be read with a keyset query
+    private final Map<Integer, Integer> pageEndIds = new HashMap<>();
+    private final Set<Integer> loadingPages = new HashSet<>();
+
+    public LazyBookTableModel(BookDataService dataService, int pageSize, int maxCachedPages) {
+        this.dataService = dataService;
+        this.pageSize = pageSize;
+        this.maxCachedPages = maxCachedPages;
+        this.pages = new LinkedHashMap<Integer, List<Book>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Book>> eldest) {
+                return size() > LazyBookTableModel.this.maxCachedPages;
+            }
+        };
+    }
+
+    // Show the whole catalog (null) or only titles containing the filter
+    public void setTitleFilter(String titleFilter) {
+        this.titleFilter = titleFilter;
+        this.searchQuery = null;
+        refresh();
+    }
+
+    // Show the ranked results of a full-text query, in relevance order
+    public void setSearchQuery(String searchQuery) {
+        setSearchQuery(searchQuery, false);
+    }
+
+    // Fuzzy queries tolerate misspelled title and author words
+    public void setSearchQuery(String searchQuery, boolean fuzzy) {
+        this.titleFilter = null;
+        this.searchQuery = searchQuery;
+        this.fuzzy = fuzzy;
+        refresh();
+    }
+
+    // Drop every cached page and re-read the row count in the background
+    public void refresh() {
+        final int requestGeneration = ++generation;
+        final String filter = titleFilter;
+        final String query = searchQuery;
+        final boolean fuzzyQuery = fuzzy;
+        pages.clear();
+        pageEndIds.clear();
+        loadingPages.clear();
+        searchResults = null;
+        // Rows of the previous listing must not be repainted (and their pages re-requested) under the new one
+        rowCount = 0;
+        fireTableDataChanged();
+        if (query != null) {
+            dataService.submit("table-count", () -> fuzzyQuery
+                    ? dataService.getDatabase().searchBookIdsFuzzy(query, 0)
+                    : dataService.getDatabase().searchBookIds(query, 0), ids -> {
+                if (requestGeneration == generation) {
+                    searchResults = ids;
+                    rowCount = ids.length;
+                    fireTableDataChanged();
+                }
+            }, null);
+            return;
+        }
+        // A newer refresh supersedes a count query that is still running
+        dataService.submit("table-count", () -> dataService.getDatabase().getBookCount(filter), count -> {
+            if (requestGeneration == generation) {
+                rowCount = count;
+                fireTableDataChanged();
+            }
+        }, null);
+    }
+
+    // The book shown at a row, or null while its page is still loading
+    public Book getBookAt(int rowIndex) {
+        List<Book> page = pages.get(rowIndex / pageSize);
+        if (page == null) {
+            requestPage(rowIndex / pageSize);
+            return null;
+        }
+        int index = rowIndex % pageSize;
+        return index < page.size() ? page.get(index) : null;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        Book book = getBookAt(rowIndex);
+        if (book == null) {
+            // Placeholder row until the page arrives
+            return columnIndex == 1 ? LOADING : "";
+        }
+        switch (columnIndex) {
+            case 0: return book.getId();
+            case 1: return book.getTitle();
+            case 2: return book.getAuthor();
+            case 3: return book.getPublisher();
+            case 4: return book.getYear();
+            case 5: return book.isAvailable() ? "Yes" : "No";
+            default: return null;
+        }
+    }
+
+    private void requestPage(final int pageIndex) {
+        // A search has no pages until its ranked ids arrive; loading now would read plain catalog pages
+        if (searchQuery != null && searchResults == null) {
+            return;
+        }
+        if (!loadingPages.add(pageIndex)) {
+            return;
+        }
+        final int requestGeneration = generation;
+        final String filter = titleFilter;
+        final int[] results = searchResults;
+        // Known boundary from the previous page lets us skip the offset lookup
+        final Integer knownAfterId = pageIndex == 0 ? Integer.valueOf(0) : pageEndIds.get(pageIndex - 1);
+        dataService.submit(null, () -> requestGeneration == generation
+                        ? loadPage(filter, results, pageIndex, knownAfterId) : Collections.<Book>emptyList(),
+                page -> pageLoaded(requestGeneration, pageIndex, page), e -> loadingPages.remove(pageIndex));
+    }
+
+    // Runs on a data service thread
+    private List<Book> loadPage(String filter, int[] results, int pageIndex, Integer knownAfterId) {
+        if (results != null) {
+            int from = Math.min(results.length, pageIndex * pageSize);
+            int to = Math.min(results.length, from + pageSize);
+            return dataService.getDatabase().getBooksByIds(Arrays.copyOfRange(results, from, to));
+        }
+        int afterId;
+        if (knownAfterId != null) {
+            afterId = knownAfterId;
+        } else {
+            int firstId = dataService.getDatabase().getBookIdAtOffset(filter, pageIndex * pageSize);
+            if (firstId < 0) {
+                return Collections.emptyList();
+            }
+            afterId = firstId - 1;
+        }
+        return dataService.getDatabase().getBooksPage(filter, afterId, pageSize);
+    }
+
+    private void pageLoaded(int requestGeneration, int pageIndex, List<Book> page) {
+        if (requestGeneration != generation) {
+            return;
+        }
+        loadingPages.remove(pageIndex);
+        pages.put(pageIndex, page);
+        if (!page.isEmpty()) {
+            pageEndIds.put(pageIndex, page.get(page.size() - 1).getId());
+        }
+        int firstRow = pageIndex * pageSize;
+        int lastRow = Math.min(firstRow + pageSize, rowCount) - 1;
+        if (firstRow <= lastRow) {
+            fireTableRowsUpdated(firstRow, lastRow);
+        }
+    }
+}
@@ -1,16 +1,28 @@
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.*;
-import java.sql.*;
-import java.util.Vector;
+import java.util.List;
 
 public class LibraryManagementSystem extends JFrame {
     // Swing Components
     private JTable tableBooks;
-    private DefaultTableModel tableModel;
+    private LazyBookTableModel tableModel;
     private JTextField txtId, txtTitle, txtAuthor, txtPublisher, txtYear, txtSearch;
     private JButton btnAdd, btnUpdate, btnDelete, btnSearch, btnRefresh;
+    private JCheckBox chkFuzzy;
+    private JLabel lblStatus;
+    private JProgressBar progressBusy;
+    private JPopupMenu popupSuggestions;
+    private Timer suggestTimer;
+    private boolean applyingSuggestion;
+
+    private static final int SUGGEST_DELAY_MILLIS = 75;
+    private static final int MAX_SUGGESTIONS = 8;
+
+    // All JDBC work runs here so the Event Dispatch Thread never blocks on the database
+    private final BookDataService dataService = new BookDataService(4);
 
     public LibraryManagementSystem() {
         setTitle("Library Management System");
@@ -60,14 +72,55 @@ public class LibraryManagementSystem extends JFrame {
         JPanel panelSearch = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 10));
         txtSearch = new JTextField(20);
         btnSearch = new JButton("Search");
+        chkFuzzy = new JCheckBox("Fuzzy");
+        chkFuzzy.setToolTipText("Also match misspelled titles and authors");
         btnRefresh = new JButton("Refresh");
-        panelSearch.add(new JLabel("Search by Title:"));
+        panelSearch.add(new JLabel("Search:"));
         panelSearch.add(txtSearch);
         panelSearch.add(btnSearch);
+        panelSearch.add(chkFuzzy);
         panelSearch.add(btnRefresh);
 
+        // In-flight indicator for background database requests
+        lblStatus = new JLabel(" ");
+        progressBusy = new JProgressBar();
+        progressBusy.setIndeterminate(true);
+        progressBusy.setVisible(false);
+        panelSearch.add(progressBusy);
+        panelSearch.add(lblStatus);
+        dataService.setBusyListener(count -> {
+            progressBusy.setVisible(count > 0);
+            lblStatus.setText(count > 0 ? "Working (" + count + ")..." : " ");
+        });
+
+        // Type-ahead: completions come from the in-memory prefix index once typing pauses briefly
+        popupSuggestions = new JPopupMenu();
+        popupSuggestions.setFocusable(false);
+        suggestTimer = new Timer(SUGGEST_DELAY_MILLIS, e -> requestSuggestions());
+        suggestTimer.setRepeats(false);
+        txtSearch.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                searchTextChanged();
+            }
+
+            public void removeUpdate(DocumentEvent e) {
+                searchTextChanged();
+            }
+
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        txtSearch.addKeyListener(new KeyAdapter() {
+            public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
+                    hideSuggestions();
+                }
+            }
+        });
+
         // Table for displaying books
-        tableModel = new DefaultTableModel(new String[]{"ID", "Title", "Author", "Publisher", "Year", "Available"}, 0);
+        // Rows are fetched a page at a time as they scroll into view
+        tableModel = new LazyBookTableModel(dataService, 200, 50);
         tableBooks = new JTable(tableModel);
         JScrollPane scrollPane = new JScrollPane(tableBooks);
 
@@ -75,12 +128,13 @@ public class LibraryManagementSystem extends JFrame {
         tableBooks.addMouseListener(new MouseAdapter() {
             public void mouseClicked(MouseEvent e) {
                 int selectedRow = tableBooks.getSelectedRow();
-                if (selectedRow != -1) {
-                    txtId.setText(tableModel.getValueAt(selectedRow, 0).toString());
-                    txtTitle.setText(tableModel.getValueAt(selectedRow, 1).toString());
-                    txtAuthor.setText(tableModel.getValueAt(selectedRow, 2).toString());
-                    txtPublisher.setText(tableModel.getValueAt(selectedRow, 3).toString());
-                    txtYear.setText(tableModel.getValueAt(selectedRow, 4).toString());
+                Book book = selectedRow != -1 ? tableModel.getBookAt(selectedRow) : null;
+                if (book != null) {
+                    txtId.setText(String.valueOf(book.getId()));
+                    txtTitle.setText(book.getTitle());
+                    txtAuthor.setText(book.getAuthor());
+                    txtPublisher.setText(book.getPublisher() != null ? book.getPublisher() : "");
+                    txtYear.setText(String.valueOf(book.getYear()));
                 }
             }
         });
@@ -90,6 +144,7 @@ public class LibraryManagementSystem extends JFrame {
         btnUpdate.addActionListener(e -> updateBook());
         btnDelete.addActionListener(e -> deleteBook());
         btnSearch.addActionListener(e -> searchBooks());
+        txtSearch.addActionListener(e -> searchBooks());
         btnRefresh.addActionListener(e -> loadBooks());
 
         // Layout the components in the frame
@@ -112,28 +167,7 @@ public class LibraryManagementSystem extends JFrame {
 
     // Load books from the database into the table
     private void loadBooks() {
-        try {
-            Connection con = DBConnection.getConnection();
-            Statement stmt = con.createStatement();
-            ResultSet rs = stmt.executeQuery("SELECT * FROM books");
-            tableModel.setRowCount(0); // Clear table
-
-            while (rs.next()) {
-                Vector<Object> row = new Vector<>();
-                row.add(rs.getInt("id"));
-                row.add(rs.getString("title"));
-                row.add(rs.getString("author"));
-                row.add(rs.getString("publisher"));
-                row.add(rs.getInt("year"));
-                row.add(rs.getBoolean("available") ? "Yes" : "No");
-                tableModel.addRow(row);
-            }
-            rs.close();
-            stmt.close();
-            con.close();
-        } catch (SQLException ex) {
-            JOptionPane.showMessageDialog(this, "Error loading books: " + ex.getMessage());
-        }
+        tableModel.setTitleFilter(null);
     }
 
     // Add a new book to the database
@@ -149,22 +183,15 @@ public class LibraryManagementSystem extends JFrame {
             return;
         }
 
-        try {
-            Connection con = DBConnection.getConnection();
-            String sql = "INSERT INTO books (title, author, publisher, year) VALUES (?, ?, ?, ?)";
-            PreparedStatement ps = con.prepareStatement(sql);
-            ps.setString(1, title);
-            ps.setString(2, author);
-            ps.setString(3, publisher);
-            ps.setInt(4, year);
-            ps.executeUpdate();
-            ps.close();
-            con.close();
-            loadBooks();
-            JOptionPane.showMessageDialog(this, "Book added successfully!");
-        } catch (SQLException ex) {
-            JOptionPane.showMessageDialog(this, "Error adding book: " + ex.getMessage());
-        }
+        Book book = new Book(0, title, author, publisher, year, true);
+        dataService.submit(null, () -> dataService.getDatabase().addBook(book), id -> {
+            if (id > 0) {
+                loadBooks();
+                JOptionPane.showMessageDialog(this, "Book added successfully!");
+            } else {
+                JOptionPane.showMessageDialog(this, "Error adding book. See logs/error.log for details.");
+            }
+        }, ex -> JOptionPane.showMessageDialog(this, "Error adding book: " + ex.getMessage()));
     }
 
     // Update selected book record
@@ -185,23 +212,15 @@ public class LibraryManagementSystem extends JFrame {
             return;
         }
 
-        try {
-            Connection con = DBConnection.getConnection();
-            String sql = "UPDATE books SET title=?, author=?, publisher=?, year=? WHERE id=?";
-            PreparedStatement ps = con.prepareStatement(sql);
-            ps.setString(1, title);
-            ps.setString(2, author);
-            ps.setString(3, publisher);
-            ps.setInt(4, year);
-            ps.setInt(5, id);
-            ps.executeUpdate();
-            ps.close();
-            con.close();
-            loadBooks();
-            JOptionPane.showMessageDialog(this, "Book updated successfully!");
-        } catch (SQLException ex) {
-            JOptionPane.showMessageDialog(this, "Error updating book: " + ex.getMessage());
-        }
+        final int newYear = year;
+        dataService.submit(null, () -> dataService.getDatabase().updateBookDetails(id, title, author, publisher, newYear), updated -> {
+            if (updated) {
+                loadBooks();
+                JOptionPane.showMessageDialog(this, "Book updated successfully!");
+            } else {
+                JOptionPane.showMessageDialog(this, "Error updating book. See logs/error.log for details.");
+            }
+        }, ex -> JOptionPane.showMessageDialog(this, "Error updating book: " + ex.getMessage()));
     }
 
     // Delete selected book record
@@ -216,51 +235,79 @@ public class LibraryManagementSystem extends JFrame {
             return;
         }
 
+        dataService.submit(null, () -> dataService.getDatabase().deleteBook(id), deleted -> {
+            if (deleted) {
+                loadBooks();
+                JOptionPane.showMessageDialog(this, "Book deleted successfully!");
+            } else {
+                JOptionPane.showMessageDialog(this, "Error deleting book. See logs/error.log for details.");
+            }
+        }, ex -> JOptionPane.showMessageDialog(this, "Error deleting book: " + ex.getMessage()));
+    }
+
+    // Restart the debounce timer on every keystroke
+    private void searchTextChanged() {
+        if (!applyingSuggestion) {
+            suggestTimer.restart();
+        }
+    }
+
+    private void requestSuggestions() {
+        final String prefix = txtSearch.getText().trim();
+        if (prefix.isEmpty()) {
+            dataService.cancel("typeahead");
+            hideSuggestions();
+            return;
+        }
+        // Supersedes any completion request still in flight for an older prefix
+        dataService.submit("typeahead", () -> dataService.getDatabase().completeBooks(prefix, MAX_SUGGESTIONS),
+                completions -> showSuggestions(prefix, completions), null);
+    }
+
+    private void showSuggestions(String prefix, List<PrefixCompletionIndex.Completion> completions) {
+        popupSuggestions.setVisible(false);
+        popupSuggestions.removeAll();
+        // The text may have changed again while the completions were computed
+        if (completions.isEmpty() || !prefix.equals(txtSearch.getText().trim()) || !txtSearch.isShowing()) {
+            return;
+        }
+        for (PrefixCompletionIndex.Completion completion : completions) {
+            String label = completion.getKind() == PrefixCompletionIndex.Kind.AUTHOR
+                    ? completion.getText() + " (author)" : completion.getText();
+            JMenuItem item = new JMenuItem(label);
+            item.addActionListener(e -> applySuggestion(completion.getText()));
+            popupSuggestions.add(item);
+        }
+        popupSuggestions.show(txtSearch, 0, txtSearch.getHeight());
+        txtSearch.requestFocusInWindow();
+    }
+
+    private void applySuggestion(String text) {
+        applyingSuggestion = true;
         try {
-            Connection con = DBConnection.getConnection();
-            String sql = "DELETE FROM books WHERE id=?";
-            PreparedStatement ps = con.prepareStatement(sql);
-            ps.setInt(1, id);
-            ps.executeUpdate();
-            ps.close();
-            con.close();
-            loadBooks();
-            JOptionPane.showMessageDialog(this, "Book deleted successfully!");
-        } catch (SQLException ex) {
-            JOptionPane.showMessageDialog(this, "Error deleting book: " + ex.getMessage());
+            txtSearch.setText(text);
+        } finally {
+            applyingSuggestion = false;
         }
+        hideSuggestions();
+        searchBooks();
     }
 
-    // Search books by title
+    private void hideSuggestions() {
+        suggestTimer.stop();
+        popupSuggestions.setVisible(false);
+    }
+
+    // Search title, author, publisher, ISBN and category through the full-text index
     private void searchBooks() {
+        hideSuggestions();
+        dataService.cancel("typeahead");
         String searchTerm = txtSearch.getText();
         if (searchTerm.trim().isEmpty()) {
             JOptionPane.showMessageDialog(this, "Please enter a search term.");
             return;
         }
-        try {
-            Connection con = DBConnection.getConnection();
-            String sql = "SELECT * FROM books WHERE title LIKE ?";
-            PreparedStatement ps = con.prepareStatement(sql);
-            ps.setString(1, "%" + searchTerm + "%");
-            ResultSet rs = ps.executeQuery();
-            tableModel.setRowCount(0); // Clear table
-            while (rs.next()) {
-                Vector<Object> row = new Vector<>();
-                row.add(rs.getInt("id"));
-                row.add(rs.getString("title"));
-                row.add(rs.getString("author"));
-                row.add(rs.getString("publisher"));
-                row.add(rs.getInt("year"));
-                row.add(rs.getBoolean("available") ? "Yes" : "No");
-                tableModel.addRow(row);
-            }
-            rs.close();
-            ps.close();
-            con.close();
-        } catch (SQLException ex) {
-            JOptionPane.showMessageDialog(this, "Error searching books: " + ex.getMessage());
-        }
+        tableModel.setSearchQuery(searchTerm.trim(), chkFuzzy.isSelected());
     }
 
     public static void main(String[] args) {
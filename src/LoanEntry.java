@@ -0,0 +1,78 @@
+import java.util.Date;
+
+// One row of a member's loan history. Refers to the book by id; the page it came from holds the book details.
+public class LoanEntry {
+    private final int id;
+    private final int memberId;
+    private final int bookId;
+    private final Date borrowDate;
+    private final Date dueDate;
+    private final Date returnDate;
+    private final double fineAmount;
+    private final int renewalCount;
+
+    public LoanEntry(int id, int memberId, int bookId, Date borrowDate, Date dueDate, Date returnDate,
+                     double fineAmount, int renewalCount) {
+        this.id = id;
+        this.memberId = memberId;
+        this.bookId = bookId;
+        this.borrowDate = borrowDate;
+        this.dueDate = dueDate;
+        this.returnDate = returnDate;
+        this.fineAmount = fineAmount;
+        this.renewalCount = renewalCount;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getMemberId() {
+        return memberId;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public Date getBorrowDate() {
+        return borrowDate;
+    }
+
+    public Date getDueDate() {
+        return dueDate;
+    }
+
+    // Null while the loan is open
+    public Date getReturnDate() {
+        return returnDate;
+    }
+
+    public double getFineAmount() {
+        return fineAmount;
+    }
+
+    public int getRenewalCount() {
+        return renewalCount;
+    }
+
+    public boolean isOpen() {
+        return returnDate == null;
+    }
+
+    public boolean isOverdue() {
+        return returnDate == null && dueDate != null && new Date().after(dueDate);
+    }
+
+    @Override
+    public String toString() {
+        return "LoanEntry{" +
+                "id=" + id +
+                ", bookId=" + bookId +
+                ", borrowDate=" + borrowDate +
+                ", dueDate=" + dueDate +
+                ", returnDate=" + returnDate +
+                ", fineAmount=" + fineAmount +
+                '}';
+    }
+}
@@ -0,0 +1,82 @@
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// A member's loans, fetched a page at a time: open loans first (newest borrow first), then returned loans
+// (most recently returned first). Nothing is read until a page is requested, and each page costs one or two
+// index range scans plus one batch lookup of its books, however long the history is.
+public class LoanHistory {
+    private final int memberId;
+
+    public LoanHistory(int memberId) {
+        this.memberId = memberId;
+    }
+
+    public int getMemberId() {
+        return memberId;
+    }
+
+    public Page firstPage(int limit) {
+        return MemberRepository.getInstance().getLoanHistoryPage(memberId, null, limit);
+    }
+
+    // The page after the given one, or an empty page when it was the last
+    public Page nextPage(Page previous, int limit) {
+        if (!previous.hasMore()) {
+            return new Page(Collections.<LoanEntry>emptyList(), Collections.<Integer, Book>emptyMap(), null);
+        }
+        return MemberRepository.getInstance().getLoanHistoryPage(memberId, previous.getNextCursor(), limit);
+    }
+
+    public static class Page {
+        private final List<LoanEntry> entries;
+        private final Map<Integer, Book> books;
+        private final Cursor nextCursor;
+
+        Page(List<LoanEntry> entries, Map<Integer, Book> books, Cursor nextCursor) {
+            this.entries = entries;
+            this.books = books;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<LoanEntry> getEntries() {
+            return entries;
+        }
+
+        // Details of the entry's book, or null if the book has since been deleted
+        public Book getBook(LoanEntry entry) {
+            return books.get(entry.getBookId());
+        }
+
+        public boolean hasMore() {
+            return nextCursor != null;
+        }
+
+        // Position after the last entry of this page; null on the last page
+        public Cursor getNextCursor() {
+            return nextCursor;
+        }
+    }
+
+    // Keyset position: which part of the history, and the sort key of the last entry seen there
+    // (return date, borrow date, id); the return date is null for open loans
+    public static class Cursor {
+        final boolean open;
+        final Timestamp returnDate;
+        final Timestamp borrowDate;
+        final int loanId;
+
+        Cursor(boolean open, Timestamp returnDate, Timestamp borrowDate, int loanId) {
+            this.open = open;
+            this.returnDate = returnDate;
+            this.borrowDate = borrowDate;
+            this.loanId = loanId;
+        }
+
+        // Where returned loans start, once the open ones are exhausted
+        static Cursor startOfReturned() {
+            return new Cursor(false, null, null, 0);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+import java.util.Date;
+
+// Result of one item in a multi-item loan operation
+public class LoanOutcome {
+    public enum Status {
+        OK, NOT_AVAILABLE, LIMIT_REACHED, MEMBER_INACTIVE, NOT_FOUND, ALREADY_RETURNED, RENEWAL_LIMIT_REACHED, OVERDUE,
+        ERROR
+    }
+
+    private final int bookId;
+    private final int memberId;
+    private final int borrowId;
+    private final double fineAmount;
+    private final Date dueDate;
+    private final Status status;
+    private final String message;
+
+    public LoanOutcome(int bookId, int borrowId, Status status, String message) {
+        this(bookId, 0, borrowId, 0.0, status, message);
+    }
+
+    public LoanOutcome(int bookId, int memberId, int borrowId, double fineAmount, Status status, String message) {
+        this(bookId, memberId, borrowId, fineAmount, null, status, message);
+    }
+
+    public LoanOutcome(int bookId, int memberId, int borrowId, double fineAmount, Date dueDate, Status status,
+                       String message) {
+        this.bookId = bookId;
+        this.memberId = memberId;
+        this.borrowId = borrowId;
+        this.fineAmount = fineAmount;
+        this.dueDate = dueDate;
+        this.status = status;
+        this.message = message;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    // 0 when not known, e.g. for failed items
+    public int getMemberId() {
+        return memberId;
+    }
+
+    // Id of the borrow record, or 0 when no loan was created
+    public int getBorrowId() {
+        return borrowId;
+    }
+
+    // Fine charged by a return
+    public double getFineAmount() {
+        return fineAmount;
+    }
+
+    // Due date of the loan after a borrow or renewal (the unchanged one if a renewal was refused); null otherwise
+    public Date getDueDate() {
+        return dueDate;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public boolean isSuccess() {
+        return status == Status.OK;
+    }
+
+    @Override
+    public String toString() {
+        return "LoanOutcome{bookId=" + bookId + ", borrowId=" + borrowId + ", status=" + status +
+                (message != null ? ", message='" + message + "'" : "") + "}";
+    }
+}
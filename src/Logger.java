@@ -2,8 +2,12 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.StringWriter;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 public class Logger {
     private static final String LOG_DIRECTORY = "logs";
@@ -11,89 +15,313 @@ public class Logger {
     private static final String INFO_LOG_FILE = LOG_DIRECTORY + "/info.log";
     private static final String DEBUG_LOG_FILE = LOG_DIRECTORY + "/debug.log";
     private static final String TRANSACTION_LOG_FILE = LOG_DIRECTORY + "/transaction.log";
-    
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-    
+    private static final String OVERFLOW_LOG_FILE = LOG_DIRECTORY + "/overflow.log";
+
+    // DateTimeFormatter is immutable and safe to share across threads
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    public enum Level {
+        DEBUG, INFO, ERROR, OFF
+    }
+
+    private static final String ROOT_CATEGORY = "root";
+    private static final Map<String, Logger> categories = new ConcurrentHashMap<>();
     private static Logger instance;
-    
-    private Logger() {
-        // Create log directory if it doesn't exist
-        File logDir = new File(LOG_DIRECTORY);
-        if (!logDir.exists()) {
-            logDir.mkdirs();
-        }
+
+    // Null when running in synchronous mode (-Dlms.log.async=false)
+    private static AsyncLogAppender appender;
+    private static volatile boolean consoleEcho = Boolean.parseBoolean(System.getProperty("lms.log.console", "true"));
+
+    private final String category;
+    // Null means the category inherits the root level
+    private volatile Level level;
+
+    private Logger(String category, Level level) {
+        this.category = category;
+        this.level = level;
     }
-    
+
     public static synchronized Logger getInstance() {
         if (instance == null) {
-            instance = new Logger();
+            // Create log directory if it doesn't exist
+            File logDir = new File(LOG_DIRECTORY);
+            if (!logDir.exists()) {
+                logDir.mkdirs();
+            }
+
+            if (Boolean.parseBoolean(System.getProperty("lms.log.async", "true"))) {
+                appender = new AsyncLogAppender(
+                        Integer.getInteger("lms.log.queueCapacity", 8192),
+                        Integer.getInteger("lms.log.batchSize", 256),
+                        AsyncLogAppender.Backpressure.valueOf(System.getProperty("lms.log.backpressure", "BLOCK")),
+                        OVERFLOW_LOG_FILE);
+                // Flush queued records before the JVM exits
+                Runtime.getRuntime().addShutdownHook(new Thread(appender::shutdown, "lms-log-shutdown"));
+            }
+
+            instance = new Logger(ROOT_CATEGORY, Level.valueOf(System.getProperty("lms.log.level", "INFO")));
+            categories.put(ROOT_CATEGORY, instance);
         }
         return instance;
     }
-    
+
+    // Category loggers inherit the root level unless -Dlms.log.level.<category> or setLevel says otherwise
+    public static Logger getInstance(String category) {
+        getInstance();
+        return categories.computeIfAbsent(category, name -> {
+            String configured = System.getProperty("lms.log.level." + name);
+            return new Logger(name, configured != null ? Level.valueOf(configured) : null);
+        });
+    }
+
+    public static void setLevel(String category, Level level) {
+        getInstance(category).setLevel(level);
+    }
+
+    public static void setConsoleEcho(boolean enabled) {
+        consoleEcho = enabled;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setLevel(Level level) {
+        if (level == null && this == instance) {
+            throw new IllegalArgumentException("Root logger level cannot be null");
+        }
+        this.level = level;
+    }
+
+    public Level getEffectiveLevel() {
+        Level current = level;
+        return current != null ? current : instance.level;
+    }
+
+    public boolean isEnabled(Level messageLevel) {
+        return messageLevel.ordinal() >= getEffectiveLevel().ordinal() && messageLevel != Level.OFF;
+    }
+
+    public boolean isDebugEnabled() {
+        return isEnabled(Level.DEBUG);
+    }
+
+    public boolean isInfoEnabled() {
+        return isEnabled(Level.INFO);
+    }
+
     public void error(String message) {
-        log(ERROR_LOG_FILE, "[ERROR] " + message);
-        System.err.println("[ERROR] " + message);
+        if (isEnabled(Level.ERROR)) {
+            writeError(message, null);
+        }
     }
-    
+
     public void error(String message, Throwable throwable) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("[ERROR] ").append(message).append("\n");
-        sb.append(throwable.getMessage()).append("\n");
-        for (StackTraceElement element : throwable.getStackTrace()) {
-            sb.append("\t").append(element.toString()).append("\n");
+        if (isEnabled(Level.ERROR)) {
+            writeError(message, throwable);
+        }
+    }
+
+    public void error(String pattern, Object arg) {
+        if (isEnabled(Level.ERROR)) {
+            writeError(format(pattern, arg, null, null), null);
         }
-        log(ERROR_LOG_FILE, sb.toString());
-        System.err.println("[ERROR] " + message);
-        throwable.printStackTrace(System.err);
     }
-    
+
+    public void error(String pattern, Object arg1, Object arg2) {
+        if (isEnabled(Level.ERROR)) {
+            writeError(format(pattern, arg1, arg2, null), null);
+        }
+    }
+
+    public void error(Supplier<String> message) {
+        if (isEnabled(Level.ERROR)) {
+            writeError(message.get(), null);
+        }
+    }
+
     public void info(String message) {
-        log(INFO_LOG_FILE, "[INFO] " + message);
-        System.out.println("[INFO] " + message);
+        if (isEnabled(Level.INFO)) {
+            writeInfo(message);
+        }
+    }
+
+    public void info(String pattern, Object arg) {
+        if (isEnabled(Level.INFO)) {
+            writeInfo(format(pattern, arg, null, null));
+        }
+    }
+
+    public void info(String pattern, Object arg1, Object arg2) {
+        if (isEnabled(Level.INFO)) {
+            writeInfo(format(pattern, arg1, arg2, null));
+        }
     }
-    
+
+    public void info(String pattern, Object arg1, Object arg2, Object arg3) {
+        if (isEnabled(Level.INFO)) {
+            writeInfo(format(pattern, arg1, arg2, arg3));
+        }
+    }
+
+    public void info(Supplier<String> message) {
+        if (isEnabled(Level.INFO)) {
+            writeInfo(message.get());
+        }
+    }
+
     public void debug(String message) {
-        log(DEBUG_LOG_FILE, "[DEBUG] " + message);
+        if (isEnabled(Level.DEBUG)) {
+            log(DEBUG_LOG_FILE, "[DEBUG] " + message);
+        }
+    }
+
+    public void debug(String pattern, Object arg) {
+        if (isEnabled(Level.DEBUG)) {
+            log(DEBUG_LOG_FILE, "[DEBUG] " + format(pattern, arg, null, null));
+        }
     }
-    
+
+    public void debug(String pattern, Object arg1, Object arg2) {
+        if (isEnabled(Level.DEBUG)) {
+            log(DEBUG_LOG_FILE, "[DEBUG] " + format(pattern, arg1, arg2, null));
+        }
+    }
+
+    public void debug(Supplier<String> message) {
+        if (isEnabled(Level.DEBUG)) {
+            log(DEBUG_LOG_FILE, "[DEBUG] " + message.get());
+        }
+    }
+
+    // Transaction records are written at INFO level
     public void transaction(String message) {
-        log(TRANSACTION_LOG_FILE, "[TRANSACTION] " + message);
+        if (isEnabled(Level.INFO)) {
+            log(TRANSACTION_LOG_FILE, "[TRANSACTION] " + message);
+        }
     }
-    
+
+    public void transaction(Supplier<String> message) {
+        if (isEnabled(Level.INFO)) {
+            log(TRANSACTION_LOG_FILE, "[TRANSACTION] " + message.get());
+        }
+    }
+
     public void bookAction(String action, Book book, Member member) {
+        if (!isEnabled(Level.INFO)) {
+            return;
+        }
         String message = String.format("%s - Book ID: %d, Title: %s, Member: %s",
                 action, book.getId(), book.getTitle(), member != null ? member.getName() : "N/A");
         transaction(message);
     }
-    
+
     public void memberAction(String action, Member member) {
-        String message = String.format("%s - Member ID: %d, Name: %s", 
+        if (!isEnabled(Level.INFO)) {
+            return;
+        }
+        String message = String.format("%s - Member ID: %d, Name: %s",
                 action, member.getId(), member.getName());
         transaction(message);
     }
-    
-    private synchronized void log(String fileName, String message) {
+
+    private void writeError(String message, Throwable throwable) {
+        String line = "[ERROR] " + message;
+        if (throwable == null) {
+            log(ERROR_LOG_FILE, line);
+            if (consoleEcho) {
+                System.err.println(line);
+            }
+            return;
+        }
+        // Render the stack trace once and reuse it for the file and the console
+        StringWriter trace = new StringWriter();
+        throwable.printStackTrace(new PrintWriter(trace));
+        log(ERROR_LOG_FILE, line + "\n" + trace);
+        if (consoleEcho) {
+            System.err.println(line);
+            System.err.print(trace);
+        }
+    }
+
+    private void writeInfo(String message) {
+        String line = "[INFO] " + message;
+        log(INFO_LOG_FILE, line);
+        if (consoleEcho) {
+            System.out.println(line);
+        }
+    }
+
+    // Replaces each {} placeholder in turn with the next argument
+    private static String format(String pattern, Object arg1, Object arg2, Object arg3) {
+        StringBuilder sb = new StringBuilder(pattern.length() + 32);
+        int argIndex = 0;
+        int start = 0;
+        int placeholder;
+        while ((placeholder = pattern.indexOf("{}", start)) >= 0 && argIndex < 3) {
+            sb.append(pattern, start, placeholder);
+            Object arg = argIndex == 0 ? arg1 : argIndex == 1 ? arg2 : arg3;
+            sb.append(arg);
+            argIndex++;
+            start = placeholder + 2;
+        }
+        sb.append(pattern, start, pattern.length());
+        return sb.toString();
+    }
+
+    private void log(String fileName, String message) {
+        if (appender != null) {
+            appender.append(fileName, message, fileName.equals(DEBUG_LOG_FILE));
+        } else {
+            logSynchronously(fileName, message);
+        }
+    }
+
+    private static synchronized void logSynchronously(String fileName, String message) {
         try (PrintWriter writer = new PrintWriter(new FileWriter(fileName, true))) {
-            writer.println(DATE_FORMAT.format(new Date()) + " " + message);
+            writer.println(DATE_FORMAT.format(LocalDateTime.now()) + " " + message);
         } catch (IOException e) {
             System.err.println("Failed to write to log file: " + fileName);
             e.printStackTrace();
         }
     }
-    
+
     public void clearLogs() {
         clearLog(ERROR_LOG_FILE);
         clearLog(INFO_LOG_FILE);
         clearLog(DEBUG_LOG_FILE);
     }
-    
+
+    // Blocks until queued records are on disk; no-op in synchronous mode
+    public void flush() {
+        if (appender != null) {
+            appender.flush(5000);
+        }
+    }
+
+    // Queued, dropped and written record counters of the async appender
+    public String getStats() {
+        return appender != null ? appender.getStats() : "synchronous";
+    }
+
     private void clearLog(String fileName) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(fileName, false))) {
-            writer.println(DATE_FORMAT.format(new Date()) + " [SYSTEM] Log cleared");
-        } catch (IOException e) {
-            System.err.println("Failed to clear log file: " + fileName);
-            e.printStackTrace();
+        if (appender != null) {
+            try {
+                appender.truncate(fileName);
+                appender.append(fileName, "[SYSTEM] Log cleared", false);
+            } catch (IOException e) {
+                System.err.println("Failed to clear log file: " + fileName);
+                e.printStackTrace();
+            }
+            return;
+        }
+        synchronized (Logger.class) {
+            try (PrintWriter writer = new PrintWriter(new FileWriter(fileName, false))) {
+                writer.println(DATE_FORMAT.format(LocalDateTime.now()) + " [SYSTEM] Log cleared");
+            } catch (IOException e) {
+                System.err.println("Failed to clear log file: " + fileName);
+                e.printStackTrace();
+            }
         }
     }
-} 
\ No newline at end of file
+}
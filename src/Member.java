@@ -12,9 +12,13 @@ public class Member {
     private Date expiryDate;
     private boolean active;
     private String memberType; // Student, Faculty, Regular, etc.
+    // Loans made through this object; created on first use. Stored history is read through getLoanHistory().
     private List<BorrowRecord> borrowHistory;
+    private LoanHistory loanHistory;
     private int maxBooksAllowed;
     private double fineAmount;
+    // Loans not yet returned; kept in step with members.active_loans instead of being counted from the history
+    private int activeLoanCount;
 
     public Member(int id, String name, String email, String phone, String address) {
         this.id = id;
@@ -26,7 +30,6 @@ public class Member {
         this.expiryDate = calculateExpiryDate();
         this.active = true;
         this.memberType = "Regular";
-        this.borrowHistory = new ArrayList<>();
         this.maxBooksAllowed = 3;
         this.fineAmount = 0.0;
     }
@@ -42,11 +45,27 @@ public class Member {
         this.expiryDate = calculateExpiryDate();
         this.active = true;
         this.memberType = memberType;
-        this.borrowHistory = new ArrayList<>();
         this.maxBooksAllowed = maxBooksAllowed;
         this.fineAmount = 0.0;
     }
 
+    // Restores a stored member (see MemberRepository); no loans are loaded
+    Member(int id, String name, String email, String phone, String address, String memberType, int maxBooksAllowed,
+           Date joinDate, Date expiryDate, boolean active, double fineAmount, int activeLoanCount) {
+        this.id = id;
+        this.name = name;
+        this.email = email;
+        this.phone = phone;
+        this.address = address;
+        this.memberType = memberType;
+        this.maxBooksAllowed = maxBooksAllowed;
+        this.joinDate = joinDate != null ? joinDate : new Date();
+        this.expiryDate = expiryDate != null ? expiryDate : calculateExpiryDate();
+        this.active = active;
+        this.fineAmount = fineAmount;
+        this.activeLoanCount = Math.max(0, activeLoanCount);
+    }
+
     private Date calculateExpiryDate() {
         // Set expiry to 1 year from join date
         java.util.Calendar calendar = java.util.Calendar.getInstance();
@@ -125,17 +144,36 @@ public class Member {
     }
 
     public List<BorrowRecord> getBorrowHistory() {
+        if (borrowHistory == null) {
+            borrowHistory = new ArrayList<>();
+        }
         return borrowHistory;
     }
 
-    public int getCurrentBorrowCount() {
-        int count = 0;
-        for (BorrowRecord record : borrowHistory) {
-            if (record.getReturnDate() == null) {
-                count++;
-            }
+    // Stored loans, read from the database a page at a time when asked for
+    public LoanHistory getLoanHistory() {
+        if (loanHistory == null) {
+            loanHistory = new LoanHistory(id);
         }
-        return count;
+        return loanHistory;
+    }
+
+    public int getCurrentBorrowCount() {
+        return activeLoanCount;
+    }
+
+    // Set from members.active_loans when the member is loaded
+    public void setCurrentBorrowCount(int activeLoanCount) {
+        this.activeLoanCount = Math.max(0, activeLoanCount);
+    }
+
+    // Called once a borrow or return has committed in the database
+    void loanOpened() {
+        activeLoanCount++;
+    }
+
+    void loanClosed() {
+        activeLoanCount = Math.max(0, activeLoanCount - 1);
     }
 
     public boolean canBorrow() {
@@ -152,7 +190,8 @@ public class Member {
         }
         
         BorrowRecord record = new BorrowRecord(this, book);
-        borrowHistory.add(record);
+        getBorrowHistory().add(record);
+        loanOpened();
         return record;
     }
 
@@ -164,13 +203,10 @@ public class Member {
         record.returnBook();
         Book book = record.getBook();
         book.returnBook();
+        loanClosed();
         
-        // Calculate fine if any
-        long daysOverdue = record.getDaysOverdue();
-        if (daysOverdue > 0) {
-            double fineRate = 1.0; // $1 per day
-            fineAmount += daysOverdue * fineRate;
-        }
+        // Fine, if any, under this member type's policy
+        fineAmount += record.getFineAmount();
         
         return true;
     }
@@ -0,0 +1,196 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Loads members and their loan history. A member comes back without any loans attached; the history is read
+// a page at a time through LoanHistory, so opening a profile costs the same for a new member and a decades-old one.
+public class MemberRepository {
+    private static final Logger logger = Logger.getInstance("database");
+    private static MemberRepository instance;
+
+    private static final String MEMBER_COLUMNS = "id, name, email, phone, address, join_date, expiry_date, active, " +
+            "member_type, max_books_allowed, fine_amount, active_loans";
+    private static final String LOAN_COLUMNS = "id, member_id, book_id, borrow_date, due_date, return_date, " +
+            "fine_amount, renewal_count";
+    private static final int MAX_PAGE_SIZE = 500;
+
+    // All four queries walk idx_borrow_member_open (member_id, return_date, borrow_date, plus the implicit id)
+    // in index order and stop after one page; returned loans sort by borrow date within a return date to match it
+    private static final String OPEN_LOANS_SQL = "SELECT " + LOAN_COLUMNS + " FROM borrow_records " +
+            "WHERE member_id = ? AND return_date IS NULL ORDER BY borrow_date DESC, id DESC LIMIT ?";
+    private static final String OPEN_LOANS_AFTER_SQL = "SELECT " + LOAN_COLUMNS + " FROM borrow_records " +
+            "WHERE member_id = ? AND return_date IS NULL AND (borrow_date < ? OR (borrow_date = ? AND id < ?)) " +
+            "ORDER BY borrow_date DESC, id DESC LIMIT ?";
+    private static final String RETURNED_LOANS_SQL = "SELECT " + LOAN_COLUMNS + " FROM borrow_records " +
+            "WHERE member_id = ? AND return_date IS NOT NULL ORDER BY return_date DESC, borrow_date DESC, id DESC LIMIT ?";
+    private static final String RETURNED_LOANS_AFTER_SQL = "SELECT " + LOAN_COLUMNS + " FROM borrow_records " +
+            "WHERE member_id = ? AND (return_date < ? OR (return_date = ? AND " +
+            "(borrow_date < ? OR (borrow_date = ? AND id < ?)))) " +
+            "ORDER BY return_date DESC, borrow_date DESC, id DESC LIMIT ?";
+
+    private MemberRepository() {
+    }
+
+    public static synchronized MemberRepository getInstance() {
+        if (instance == null) {
+            instance = new MemberRepository();
+        }
+        return instance;
+    }
+
+    public Member getMemberById(int memberId) {
+        String sql = "SELECT " + MEMBER_COLUMNS + " FROM members WHERE id = ?";
+
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, memberId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return mapMember(rs);
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Error retrieving member with ID: " + memberId, e);
+        }
+        return null;
+    }
+
+    static Member mapMember(ResultSet rs) throws SQLException {
+        return new Member(
+            rs.getInt("id"),
+            rs.getString("name"),
+            rs.getString("email"),
+            rs.getString("phone"),
+            rs.getString("address"),
+            rs.getString("member_type"),
+            rs.getInt("max_books_allowed"),
+            rs.getTimestamp("join_date"),
+            rs.getTimestamp("expiry_date"),
+            rs.getBoolean("active"),
+            rs.getDouble("fine_amount"),
+            rs.getInt("active_loans")
+        );
+    }
+
+    // One page of the member's history after the cursor (null for the first page), with its books loaded
+    public LoanHistory.Page getLoanHistoryPage(int memberId, LoanHistory.Cursor after, int limit) {
+        limit = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<LoanEntry> entries = new ArrayList<>(limit);
+        LoanHistory.Cursor next = null;
+
+        try (Connection conn = DBConnection.getConnection()) {
+            LoanHistory.Cursor position = after;
+            if (position == null || position.open) {
+                // One row past the page tells whether more open loans follow
+                List<LoanEntry> open = queryLoans(conn, memberId, position, true, limit + 1);
+                if (open.size() > limit) {
+                    entries.addAll(open.subList(0, limit));
+                    LoanEntry last = entries.get(limit - 1);
+                    next = new LoanHistory.Cursor(true, null, new Timestamp(last.getBorrowDate().getTime()), last.getId());
+                } else {
+                    entries.addAll(open);
+                }
+                position = LoanHistory.Cursor.startOfReturned();
+            }
+            if (next == null) {
+                int remaining = limit - entries.size();
+                List<LoanEntry> returned = queryLoans(conn, memberId, position, false, remaining + 1);
+                if (returned.size() > remaining) {
+                    entries.addAll(returned.subList(0, remaining));
+                    if (remaining == 0) {
+                        next = LoanHistory.Cursor.startOfReturned();
+                    } else {
+                        LoanEntry last = entries.get(entries.size() - 1);
+                        next = new LoanHistory.Cursor(false, new Timestamp(last.getReturnDate().getTime()),
+                                new Timestamp(last.getBorrowDate().getTime()), last.getId());
+                    }
+                } else {
+                    entries.addAll(returned);
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Error retrieving loan history for member ID: " + memberId, e);
+            entries.clear();
+            next = null;
+        }
+        return new LoanHistory.Page(entries, loadBooks(entries), next);
+    }
+
+    private static List<LoanEntry> queryLoans(Connection conn, int memberId, LoanHistory.Cursor after, boolean open,
+                                              int limit) throws SQLException {
+        boolean fromStart = after == null || after.borrowDate == null;
+        String sql = open ? (fromStart ? OPEN_LOANS_SQL : OPEN_LOANS_AFTER_SQL)
+                : (fromStart ? RETURNED_LOANS_SQL : RETURNED_LOANS_AFTER_SQL);
+        List<LoanEntry> loans = new ArrayList<>(Math.min(limit, 64));
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            pstmt.setInt(index++, memberId);
+            if (!fromStart) {
+                if (!open) {
+                    pstmt.setTimestamp(index++, after.returnDate);
+                    pstmt.setTimestamp(index++, after.returnDate);
+                }
+                pstmt.setTimestamp(index++, after.borrowDate);
+                pstmt.setTimestamp(index++, after.borrowDate);
+                pstmt.setInt(index++, after.loanId);
+            }
+            pstmt.setInt(index, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    loans.add(new LoanEntry(
+                        rs.getInt("id"),
+                        rs.getInt("member_id"),
+                        rs.getInt("book_id"),
+                        rs.getTimestamp("borrow_date"),
+                        rs.getTimestamp("due_date"),
+                        rs.getTimestamp("return_date"),
+                        rs.getDouble("fine_amount"),
+                        rs.getInt("renewal_count")
+                    ));
+                }
+            }
+        }
+        return loans;
+    }
+
+    // Books of a page: cached ones from the book cache, the rest in one IN query
+    private static Map<Integer, Book> loadBooks(List<LoanEntry> entries) {
+        Map<Integer, Book> books = new HashMap<>();
+        if (entries.isEmpty()) {
+            return books;
+        }
+        DatabaseManager dbManager = DatabaseManager.getInstance();
+        Set<Integer> missing = new LinkedHashSet<>();
+        for (LoanEntry entry : entries) {
+            int bookId = entry.getBookId();
+            if (books.containsKey(bookId) || missing.contains(bookId)) {
+                continue;
+            }
+            Book cached = dbManager.getBookCache().get(bookId);
+            if (cached != null) {
+                books.put(bookId, cached);
+            } else {
+                missing.add(bookId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            int[] ids = new int[missing.size()];
+            int i = 0;
+            for (int bookId : missing) {
+                ids[i++] = bookId;
+            }
+            for (Book book : dbManager.getBooksByIds(ids)) {
+                books.put(book.getId(), book);
+            }
+        }
+        return books;
+    }
+}
@@ -0,0 +1,334 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+// Type-ahead completions for book titles and authors.
+// A sorted array of normalized keys answers "all keys with this prefix" as one contiguous range,
+// and a range-maximum tree pulls the k heaviest keys out of that range in O(k log n).
+// Changes since the last rebuild live in a small sorted overlay that is merged at query time.
+public class PrefixCompletionIndex {
+    public enum Kind {
+        TITLE, AUTHOR
+    }
+
+    public static class Completion {
+        private final String text;
+        private final Kind kind;
+        private final int weight;
+
+        Completion(String text, Kind kind, int weight) {
+            this.text = text;
+            this.kind = kind;
+            this.weight = weight;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        // Number of books carrying this title or author
+        public int getWeight() {
+            return weight;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    private static final int REBUILD_THRESHOLD = 10_000;
+
+    // Immutable snapshot; replaced as a whole on rebuild
+    private volatile Snapshot snapshot = new Snapshot(new String[0], new String[0], new byte[0], new int[0]);
+
+    // Everything below is guarded by this
+    private final TreeMap<String, Entry> overlay = new TreeMap<>();
+    private final Map<Integer, String[]> keysByBook = new HashMap<>();
+    private Map<String, Entry> building;
+
+    // Bulk build from a catalog scan: beginBuild, addFromScan for each book, finishBuild
+    public synchronized void beginBuild() {
+        building = new HashMap<>();
+        keysByBook.clear();
+        overlay.clear();
+    }
+
+    public synchronized void addFromScan(Book book) {
+        if (building == null) {
+            add(book);
+            return;
+        }
+        String[] keys = keysFor(book);
+        keysByBook.put(book.getId(), keys);
+        accumulate(building, keys[0], book.getTitle(), Kind.TITLE, 1);
+        accumulate(building, keys[1], book.getAuthor(), Kind.AUTHOR, 1);
+    }
+
+    public synchronized void finishBuild() {
+        Map<String, Entry> entries = building;
+        building = null;
+        // Changes that arrived during the build were recorded in the overlay
+        for (Map.Entry<String, Entry> change : overlay.entrySet()) {
+            Entry delta = change.getValue();
+            accumulate(entries, change.getKey(), delta.text, delta.kind, delta.weight);
+        }
+        overlay.clear();
+        snapshot = Snapshot.of(entries);
+    }
+
+    public synchronized void add(Book book) {
+        String[] keys = keysFor(book);
+        keysByBook.put(book.getId(), keys);
+        change(keys[0], book.getTitle(), Kind.TITLE, 1);
+        change(keys[1], book.getAuthor(), Kind.AUTHOR, 1);
+    }
+
+    public synchronized void update(Book book) {
+        remove(book.getId());
+        add(book);
+    }
+
+    public synchronized void remove(int bookId) {
+        String[] keys = keysByBook.remove(bookId);
+        if (keys != null) {
+            change(keys[0], null, Kind.TITLE, -1);
+            change(keys[1], null, Kind.AUTHOR, -1);
+        }
+    }
+
+    private void change(String key, String text, Kind kind, int delta) {
+        if (key.isEmpty()) {
+            return;
+        }
+        accumulate(overlay, key, text, kind, delta);
+        if (building == null && overlay.size() >= REBUILD_THRESHOLD) {
+            compact();
+        }
+    }
+
+    // Fold the overlay into a new snapshot
+    private void compact() {
+        Snapshot current = snapshot;
+        Map<String, Entry> entries = new HashMap<>(current.keys.length + overlay.size());
+        for (int i = 0; i < current.keys.length; i++) {
+            entries.put(current.keys[i], new Entry(current.texts[i], Kind.values()[current.kinds[i]], current.weights[i]));
+        }
+        for (Map.Entry<String, Entry> change : overlay.entrySet()) {
+            Entry delta = change.getValue();
+            accumulate(entries, change.getKey(), delta.text, delta.kind, delta.weight);
+        }
+        overlay.clear();
+        snapshot = Snapshot.of(entries);
+    }
+
+    private static void accumulate(Map<String, Entry> entries, String key, String text, Kind kind, int delta) {
+        if (key.isEmpty()) {
+            return;
+        }
+        Entry entry = entries.get(key);
+        // Removals carry no display text; it is filled in by the first addition
+        if (entry == null) {
+            entries.put(key, new Entry(text != null ? text.trim() : null, kind, delta));
+        } else {
+            entry.weight += delta;
+            if (entry.text == null && text != null) {
+                entry.text = text.trim();
+            }
+        }
+    }
+
+    private static String[] keysFor(Book book) {
+        return new String[]{normalizeKey(book.getTitle()), normalizeKey(book.getAuthor())};
+    }
+
+    // Case-folded, accent-free, single-spaced form used for prefix matching
+    static String normalizeKey(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = BookSearchIndex.normalize(text);
+        StringBuilder sb = new StringBuilder(normalized.length());
+        boolean space = false;
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = sb.length() > 0;
+            } else {
+                if (space) {
+                    sb.append(' ');
+                    space = false;
+                }
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    // The k heaviest titles and authors starting with the typed prefix
+    public List<Completion> complete(String prefix, int k) {
+        String key = normalizeKey(prefix);
+        if (key.isEmpty() || k <= 0) {
+            return Collections.emptyList();
+        }
+        Snapshot current = snapshot;
+        Map<String, Entry> changes;
+        synchronized (this) {
+            changes = overlay.isEmpty() ? Collections.<String, Entry>emptyMap()
+                    : new HashMap<>(overlay.subMap(key, true, key + Character.MAX_VALUE, false));
+        }
+
+        // Over-fetch so that overlay decrements cannot starve the result
+        List<Completion> candidates = current.topK(key, k + changes.size());
+        List<Completion> merged = new ArrayList<>(candidates.size() + changes.size());
+        for (Completion completion : candidates) {
+            String candidateKey = normalizeKey(completion.text);
+            Entry delta = changes.remove(candidateKey);
+            int weight = completion.weight + (delta != null ? delta.weight : 0);
+            if (weight > 0) {
+                merged.add(new Completion(completion.text, completion.kind, weight));
+            }
+        }
+        // Keys only known to the overlay (added since the last rebuild)
+        for (Map.Entry<String, Entry> change : changes.entrySet()) {
+            Entry delta = change.getValue();
+            int baseIndex = current.indexOf(change.getKey());
+            int weight = delta.weight + (baseIndex >= 0 ? current.weights[baseIndex] : 0);
+            String text = delta.text != null ? delta.text : baseIndex >= 0 ? current.texts[baseIndex] : null;
+            if (weight > 0 && text != null) {
+                merged.add(new Completion(text, delta.kind, weight));
+            }
+        }
+        merged.sort((a, b) -> a.weight != b.weight ? Integer.compare(b.weight, a.weight) : a.text.compareTo(b.text));
+        return merged.size() > k ? new ArrayList<>(merged.subList(0, k)) : merged;
+    }
+
+    public int size() {
+        return snapshot.keys.length;
+    }
+
+    private static class Entry {
+        private String text;
+        private final Kind kind;
+        private int weight;
+
+        Entry(String text, Kind kind, int weight) {
+            this.text = text;
+            this.kind = kind;
+            this.weight = weight;
+        }
+    }
+
+    private static class Snapshot {
+        private final String[] keys;
+        private final String[] texts;
+        private final byte[] kinds;
+        private final int[] weights;
+        // Iterative segment tree: tree[n + i] = i, inner nodes hold the index of the heavier child
+        private final int[] tree;
+
+        Snapshot(String[] keys, String[] texts, byte[] kinds, int[] weights) {
+            this.keys = keys;
+            this.texts = texts;
+            this.kinds = kinds;
+            this.weights = weights;
+            int n = keys.length;
+            this.tree = new int[2 * n];
+            for (int i = 0; i < n; i++) {
+                tree[n + i] = i;
+            }
+            for (int i = n - 1; i > 0; i--) {
+                tree[i] = heavier(tree[2 * i], tree[2 * i + 1]);
+            }
+        }
+
+        static Snapshot of(Map<String, Entry> entries) {
+            List<String> sorted = new ArrayList<>(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                if (entry.getValue().weight > 0 && entry.getValue().text != null) {
+                    sorted.add(entry.getKey());
+                }
+            }
+            Collections.sort(sorted);
+            int n = sorted.size();
+            String[] keys = sorted.toArray(new String[n]);
+            String[] texts = new String[n];
+            byte[] kinds = new byte[n];
+            int[] weights = new int[n];
+            for (int i = 0; i < n; i++) {
+                Entry entry = entries.get(keys[i]);
+                texts[i] = entry.text;
+                kinds[i] = (byte) entry.kind.ordinal();
+                weights[i] = entry.weight;
+            }
+            return new Snapshot(keys, texts, kinds, weights);
+        }
+
+        private int heavier(int a, int b) {
+            if (a < 0) {
+                return b;
+            }
+            if (b < 0) {
+                return a;
+            }
+            return weights[b] > weights[a] ? b : a;
+        }
+
+        int indexOf(String key) {
+            return Arrays.binarySearch(keys, key);
+        }
+
+        // Index of the heaviest key in [from, to), or -1 for an empty range
+        private int argMax(int from, int to) {
+            int best = -1;
+            int n = keys.length;
+            for (int lo = from + n, hi = to + n; lo < hi; lo >>= 1, hi >>= 1) {
+                if ((lo & 1) == 1) {
+                    best = heavier(best, tree[lo++]);
+                }
+                if ((hi & 1) == 1) {
+                    best = heavier(best, tree[--hi]);
+                }
+            }
+            return best;
+        }
+
+        List<Completion> topK(String prefix, int k) {
+            int from = lowerBound(prefix);
+            int to = lowerBound(prefix + Character.MAX_VALUE);
+            List<Completion> result = new ArrayList<>(Math.min(k, to - from));
+            if (from >= to) {
+                return result;
+            }
+            // Each heap entry is a sub-range together with its heaviest index
+            PriorityQueue<int[]> heap = new PriorityQueue<>((a, b) -> Integer.compare(weights[b[2]], weights[a[2]]));
+            heap.add(new int[]{from, to, argMax(from, to)});
+            while (!heap.isEmpty() && result.size() < k) {
+                int[] range = heap.poll();
+                int best = range[2];
+                result.add(new Completion(texts[best], Kind.values()[kinds[best]], weights[best]));
+                if (range[0] < best) {
+                    heap.add(new int[]{range[0], best, argMax(range[0], best)});
+                }
+                if (best + 1 < range[1]) {
+                    heap.add(new int[]{best + 1, range[1], argMax(best + 1, range[1])});
+                }
+            }
+            return result;
+        }
+
+        private int lowerBound(String key) {
+            int index = Arrays.binarySearch(keys, key);
+            return index >= 0 ? index : -(index + 1);
+        }
+    }
+}
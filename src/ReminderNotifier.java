@@ -0,0 +1,87 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.sql.Timestamp;
+
+// Receives due-date reminders from DueDateReminders. Called on the reminder thread one reminder at a time, so
+// implementations that talk to slow services (mail, SMS) should hand the work off instead of blocking.
+public interface ReminderNotifier {
+    void send(Reminder reminder);
+
+    class Reminder {
+        public enum Type {
+            DUE_SOON, OVERDUE
+        }
+
+        private final Type type;
+        private final int loanId;
+        private final int memberId;
+        private final int bookId;
+        private final long dueMillis;
+
+        Reminder(Type type, int loanId, int memberId, int bookId, long dueMillis) {
+            this.type = type;
+            this.loanId = loanId;
+            this.memberId = memberId;
+            this.bookId = bookId;
+            this.dueMillis = dueMillis;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public int getLoanId() {
+            return loanId;
+        }
+
+        public int getMemberId() {
+            return memberId;
+        }
+
+        public int getBookId() {
+            return bookId;
+        }
+
+        public Timestamp getDueDate() {
+            return new Timestamp(dueMillis);
+        }
+
+        @Override
+        public String toString() {
+            return type + " loan=" + loanId + " member=" + memberId + " book=" + bookId + " due=" + getDueDate();
+        }
+    }
+
+    // Prints each reminder to standard output
+    class ConsoleSink implements ReminderNotifier {
+        @Override
+        public void send(Reminder reminder) {
+            System.out.println("[" + new Timestamp(System.currentTimeMillis()) + "] " + reminder);
+        }
+    }
+
+    // Appends one line per reminder to a local file
+    class FileSink implements ReminderNotifier {
+        private final File file;
+
+        public FileSink(String path) {
+            this.file = new File(path);
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+        }
+
+        @Override
+        public synchronized void send(Reminder reminder) {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, true))) {
+                writer.write("[" + new Timestamp(System.currentTimeMillis()) + "] " + reminder);
+                writer.newLine();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not write reminder to " + file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,319 @@
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SchemaMigrator {
+    private static final Logger logger = Logger.getInstance("database");
+    private static final String VERSION_TABLE = "schema_version";
+    // Statements already run of a migration that has not finished; lets a partly applied migration resume
+    private static final String PROGRESS_TABLE = "schema_version_progress";
+    private static final String LOCK_NAME = "librarydb_schema_migration";
+    private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+    private static final List<Migration> MIGRATIONS = new ArrayList<>();
+
+    static {
+        register(1, "Create core tables",
+                "CREATE TABLE IF NOT EXISTS books (" +
+                "id INT PRIMARY KEY AUTO_INCREMENT, " +
+                "title VARCHAR(255) NOT NULL, " +
+                "author VARCHAR(255) NOT NULL, " +
+                "publisher VARCHAR(255), " +
+                "year INT, " +
+                "isbn VARCHAR(20), " +
+                "category VARCHAR(100), " +
+                "total_copies INT DEFAULT 1, " +
+                "available_copies INT DEFAULT 1, " +
+                "location VARCHAR(100), " +
+                "date_added TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                "available BOOLEAN DEFAULT TRUE)",
+
+                "CREATE TABLE IF NOT EXISTS members (" +
+                "id INT PRIMARY KEY AUTO_INCREMENT, " +
+                "name VARCHAR(255) NOT NULL, " +
+                "email VARCHAR(255) UNIQUE NOT NULL, " +
+                "phone VARCHAR(20), " +
+                "address VARCHAR(255), " +
+                "join_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                "expiry_date TIMESTAMP, " +
+                "active BOOLEAN DEFAULT TRUE, " +
+                "member_type VARCHAR(50) DEFAULT 'Regular', " +
+                "max_books_allowed INT DEFAULT 3, " +
+                "fine_amount DOUBLE DEFAULT 0.0)",
+
+                "CREATE TABLE IF NOT EXISTS borrow_records (" +
+                "id INT PRIMARY KEY AUTO_INCREMENT, " +
+                "member_id INT NOT NULL, " +
+                "book_id INT NOT NULL, " +
+                "borrow_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                "due_date TIMESTAMP NOT NULL, " +
+                "return_date TIMESTAMP, " +
+                "fine_amount DOUBLE DEFAULT 0.0, " +
+                "renewed BOOLEAN DEFAULT FALSE, " +
+                "renewal_count INT DEFAULT 0, " +
+                "FOREIGN KEY (member_id) REFERENCES members(id) ON DELETE CASCADE, " +
+                "FOREIGN KEY (book_id) REFERENCES books(id) ON DELETE CASCADE)");
+
+        // Indexes for the loan and catalog access paths
+        register(2, "Add hot-path indexes",
+                // Per-member open loans: WHERE member_id = ? AND return_date IS NULL
+                "CREATE INDEX idx_borrow_member_return ON borrow_records (member_id, return_date)",
+                // Per-book open loans: WHERE book_id = ? AND return_date IS NULL
+                "CREATE INDEX idx_borrow_book_return ON borrow_records (book_id, return_date)",
+                // Overdue scans: WHERE return_date IS NULL AND due_date < ?
+                "CREATE INDEX idx_borrow_open_due ON borrow_records (return_date, due_date)",
+                "CREATE INDEX idx_books_isbn ON books (isbn)");
+
+        // Progress of bulk catalog imports, committed in the same transaction as each batch
+        register(3, "Add bulk import checkpoints",
+                "CREATE TABLE import_checkpoints (" +
+                "source_key CHAR(64) PRIMARY KEY, " +
+                "source_path VARCHAR(1024) NOT NULL, " +
+                "records_done BIGINT NOT NULL DEFAULT 0, " +
+                "imported BIGINT NOT NULL DEFAULT 0, " +
+                "rejected BIGINT NOT NULL DEFAULT 0, " +
+                "completed BOOLEAN NOT NULL DEFAULT FALSE, " +
+                "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP)");
+
+        // Open loans per member, maintained by every borrow and return so limit checks need no COUNT(*)
+        register(4, "Add maintained active loan counter",
+                "ALTER TABLE members ADD COLUMN active_loans INT NOT NULL DEFAULT 0",
+                "UPDATE members m SET active_loans = " +
+                "(SELECT COUNT(*) FROM borrow_records b WHERE b.member_id = m.id AND b.return_date IS NULL)");
+
+        // Member history pages, open and returned, walk (member_id, return_date, borrow_date, id) in index order
+        register(5, "Add member loan history index",
+                "CREATE INDEX idx_borrow_member_open ON borrow_records (member_id, return_date, borrow_date)");
+
+        // Fine rules per member type (types without a row pay $1/day) and the state of nightly fine accrual
+        register(6, "Add fine policies and accrued fines",
+                "CREATE TABLE fine_policies (" +
+                "member_type VARCHAR(50) PRIMARY KEY, " +
+                "daily_rate DOUBLE NOT NULL, " +
+                "grace_days INT NOT NULL DEFAULT 0, " +
+                "max_fine DOUBLE NOT NULL DEFAULT 0)",
+                "ALTER TABLE borrow_records ADD COLUMN accrued_fine DOUBLE NOT NULL DEFAULT 0, " +
+                "ADD COLUMN fine_accrued_through DATE NULL",
+                "ALTER TABLE members ADD COLUMN accrued_fines DOUBLE NOT NULL DEFAULT 0");
+
+        // idx_borrow_member_open has idx_borrow_member_return as its left prefix, so the older index is dropped
+        // rather than maintained twice on every borrow and return
+        register(7, "Drop redundant member/return_date index",
+                "DROP INDEX idx_borrow_member_return ON borrow_records");
+
+        // Due-date reminders already sent per loan (0 none, 1 due soon, 2 overdue). Existing open loans are
+        // marked with what a scheduler running until now would have sent, so the upgrade sends no backlog.
+        register(8, "Add sent reminder phase to loans",
+                "ALTER TABLE borrow_records ADD COLUMN reminder_phase TINYINT NOT NULL DEFAULT 0",
+                "UPDATE borrow_records SET reminder_phase = CASE WHEN due_date < NOW() THEN 2 " +
+                "WHEN due_date < NOW() + INTERVAL 2 DAY THEN 1 ELSE 0 END WHERE return_date IS NULL");
+    }
+
+    private static void register(int version, String description, String... statements) {
+        MIGRATIONS.add(new Migration(version, description, statements));
+        Collections.sort(MIGRATIONS, (a, b) -> Integer.compare(a.version, b.version));
+    }
+
+    public static int getLatestVersion() {
+        return MIGRATIONS.isEmpty() ? 0 : MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    // Bring the schema up to date; returns the number of migrations applied
+    public static int migrate(Connection conn) throws SQLException {
+        // Fast path: no locks and no DDL when everything is already applied
+        if (versionTableExists(conn) && pendingMigrations(loadAppliedChecksums(conn)).isEmpty()) {
+            logger.info("Database schema is current (version {})", getLatestVersion());
+            return 0;
+        }
+
+        acquireLock(conn);
+        try {
+            createVersionTable(conn);
+            // Re-read under the lock in case another instance migrated in the meantime
+            List<Migration> pending = pendingMigrations(loadAppliedChecksums(conn));
+            for (Migration migration : pending) {
+                apply(conn, migration);
+            }
+            return pending.size();
+        } finally {
+            releaseLock(conn);
+        }
+    }
+
+    private static boolean versionTableExists(Connection conn) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getTables(conn.getCatalog(), null, VERSION_TABLE, new String[]{"TABLE"})) {
+            return rs.next();
+        }
+    }
+
+    private static void createVersionTable(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + VERSION_TABLE + " (" +
+                    "version INT PRIMARY KEY, " +
+                    "description VARCHAR(255) NOT NULL, " +
+                    "checksum CHAR(64) NOT NULL, " +
+                    "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                    "execution_ms BIGINT)");
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + PROGRESS_TABLE + " (" +
+                    "version INT PRIMARY KEY, " +
+                    "checksum CHAR(64) NOT NULL, " +
+                    "statements_done INT NOT NULL)");
+        }
+    }
+
+    private static Map<Integer, String> loadAppliedChecksums(Connection conn) throws SQLException {
+        Map<Integer, String> applied = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM " + VERSION_TABLE)) {
+            while (rs.next()) {
+                applied.put(rs.getInt("version"), rs.getString("checksum"));
+            }
+        }
+        return applied;
+    }
+
+    // Verify applied migrations were not edited and return the ones still to run, in order
+    private static List<Migration> pendingMigrations(Map<Integer, String> applied) throws SQLException {
+        List<Migration> pending = new ArrayList<>();
+        for (Migration migration : MIGRATIONS) {
+            String checksum = applied.get(migration.version);
+            if (checksum == null) {
+                pending.add(migration);
+            } else if (!checksum.equals(migration.checksum)) {
+                throw new SQLException("Checksum mismatch for schema migration " + migration.version
+                        + " (" + migration.description + "): applied " + checksum + ", found " + migration.checksum);
+            }
+        }
+        return pending;
+    }
+
+    private static void apply(Connection conn, Migration migration) throws SQLException {
+        long start = System.currentTimeMillis();
+        // MySQL commits DDL implicitly, so a failed migration can leave its first statements applied. Each
+        // statement's completion is recorded, and a rerun resumes after the last one that succeeded; the
+        // version row is only written once every statement has succeeded.
+        int done = loadProgress(conn, migration);
+        if (done > 0) {
+            logger.info("Resuming schema migration {} after statement {} of {}", migration.version, done,
+                    migration.statements.length);
+        }
+        try (Statement stmt = conn.createStatement()) {
+            for (int i = done; i < migration.statements.length; i++) {
+                stmt.executeUpdate(migration.statements[i]);
+                saveProgress(conn, migration, i + 1);
+            }
+        } catch (SQLException e) {
+            logger.error("Schema migration " + migration.version + " failed: " + migration.description, e);
+            throw e;
+        }
+        long elapsed = System.currentTimeMillis() - start;
+
+        String sql = "INSERT INTO " + VERSION_TABLE + " (version, description, checksum, execution_ms) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, migration.version);
+            pstmt.setString(2, migration.description);
+            pstmt.setString(3, migration.checksum);
+            pstmt.setLong(4, elapsed);
+            pstmt.executeUpdate();
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM " + PROGRESS_TABLE + " WHERE version = ?")) {
+            pstmt.setInt(1, migration.version);
+            pstmt.executeUpdate();
+        }
+        logger.info("Applied schema migration {}: {} ({}ms)", migration.version, migration.description, elapsed);
+    }
+
+    // Statements of the migration that already ran; progress recorded for a different checksum is not trusted
+    private static int loadProgress(Connection conn, Migration migration) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT checksum, statements_done FROM " + PROGRESS_TABLE + " WHERE version = ?")) {
+            pstmt.setInt(1, migration.version);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return 0;
+                }
+                if (!migration.checksum.equals(rs.getString("checksum"))) {
+                    throw new SQLException("Schema migration " + migration.version + " was partly applied from a " +
+                            "different definition (checksum " + rs.getString("checksum") + "); repair it by hand");
+                }
+                return Math.min(rs.getInt("statements_done"), migration.statements.length);
+            }
+        }
+    }
+
+    private static void saveProgress(Connection conn, Migration migration, int done) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO " + PROGRESS_TABLE +
+                " (version, checksum, statements_done) VALUES (?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE checksum = VALUES(checksum), statements_done = VALUES(statements_done)")) {
+            pstmt.setInt(1, migration.version);
+            pstmt.setString(2, migration.checksum);
+            pstmt.setInt(3, done);
+            pstmt.executeUpdate();
+        }
+    }
+
+    // Named lock so only one application instance migrates at a time
+    private static void acquireLock(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            pstmt.setString(1, LOCK_NAME);
+            pstmt.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    throw new SQLException("Could not acquire schema migration lock within " + LOCK_TIMEOUT_SECONDS + "s");
+                }
+            }
+        }
+    }
+
+    private static void releaseLock(Connection conn) {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            pstmt.setString(1, LOCK_NAME);
+            pstmt.executeQuery().close();
+        } catch (SQLException e) {
+            logger.error("Failed to release schema migration lock", e);
+        }
+    }
+
+    private static String checksum(String[] statements) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String sql : statements) {
+                digest.update(sql.trim().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) ';');
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static class Migration {
+        private final int version;
+        private final String description;
+        private final String[] statements;
+        private final String checksum;
+
+        Migration(int version, String description, String[] statements) {
+            this.version = version;
+            this.description = description;
+            this.statements = statements;
+            this.checksum = SchemaMigrator.checksum(statements);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Caches ranked search results as id arrays, keyed on the normalized query text.
+// Every catalog write bumps a version; entries computed under an older version are treated as misses.
+// Entries are evicted least recently used first once the estimated memory use exceeds the budget.
+public class SearchResultCache {
+    private static final Logger logger = Logger.getInstance("database");
+    // Rough per-entry overhead of the map node, key string and array headers
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long usedBytes;
+    private volatile long catalogVersion;
+
+    // Statistics, guarded by this
+    private long hits;
+    private long misses;
+    private long staleHits;
+    private long evictions;
+    private long savedNanos;
+
+    public SearchResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    // Budget set with -Dlms.searchCache.maxBytes (default 32 MB); 0 disables caching
+    public static SearchResultCache fromSystemProperties() {
+        return new SearchResultCache(Math.max(0, Long.getLong("lms.searchCache.maxBytes", 32L * 1024 * 1024)));
+    }
+
+    // Call after any book insert, update or delete commits
+    public void catalogChanged() {
+        synchronized (this) {
+            catalogVersion++;
+        }
+    }
+
+    public long getCatalogVersion() {
+        return catalogVersion;
+    }
+
+    // Cached ids for the query, computing and storing them on a miss. The array is shared; do not modify it.
+    public int[] get(String mode, String query, int limit, Supplier<int[]> search) {
+        if (maxBytes <= 0) {
+            return search.get();
+        }
+        String key = key(mode, query, limit);
+        long version;
+        synchronized (this) {
+            version = catalogVersion;
+            Entry entry = entries.get(key);
+            if (entry != null && entry.version == version) {
+                hits++;
+                savedNanos += entry.costNanos;
+                return entry.ids;
+            }
+            if (entry != null) {
+                staleHits++;
+                remove(key, entry);
+            }
+            misses++;
+        }
+
+        long start = System.nanoTime();
+        int[] ids = search.get();
+        long cost = System.nanoTime() - start;
+
+        Entry entry = new Entry(ids, version, cost, ENTRY_OVERHEAD_BYTES + 2L * key.length() + 4L * ids.length);
+        synchronized (this) {
+            // Very large results would push everything else out; they are cheap to recompute relative to their size
+            if (entry.bytes <= maxBytes / 8 && version == catalogVersion) {
+                Entry previous = entries.put(key, entry);
+                if (previous != null) {
+                    usedBytes -= previous.bytes;
+                }
+                usedBytes += entry.bytes;
+                evictOverBudget();
+            }
+        }
+        return ids;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    private void evictOverBudget() {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (usedBytes > maxBytes && eldest.hasNext()) {
+            usedBytes -= eldest.next().getValue().bytes;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        entries.remove(key);
+        usedBytes -= entry.bytes;
+    }
+
+    // Case-folded and whitespace-collapsed; OR and AND keep their case because they are operators
+    static String key(String mode, String query, int limit) {
+        StringBuilder sb = new StringBuilder(mode).append('|').append(Math.max(0, limit)).append('|');
+        if (query == null) {
+            return sb.toString();
+        }
+        int prefix = sb.length();
+        for (String word : query.trim().split("\\s+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (sb.length() > prefix) {
+                sb.append(' ');
+            }
+            sb.append(word.equals("OR") || word.equals("AND") ? word : BookSearchIndex.normalize(word));
+        }
+        return sb.toString();
+    }
+
+    // Statistics
+    public synchronized double getHitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+
+    public synchronized double getSavedMillis() {
+        return savedNanos / 1_000_000.0;
+    }
+
+    public synchronized String getStats() {
+        return String.format("entries=%d, bytes=%d/%d, hits=%d, misses=%d, hitRatio=%.1f%%, stale=%d, evictions=%d, " +
+                        "saved=%.1fms, catalogVersion=%d", entries.size(), usedBytes, maxBytes, hits, misses,
+                getHitRatio() * 100, staleHits, evictions, getSavedMillis(), catalogVersion);
+    }
+
+    public void logStats() {
+        logger.info("Search cache: {}", getStats());
+    }
+
+    private static class Entry {
+        private final int[] ids;
+        private final long version;
+        private final long costNanos;
+        private final long bytes;
+
+        Entry(int[] ids, long version, long costNanos, long bytes) {
+            this.ids = ids;
+            this.version = version;
+            this.costNanos = costNanos;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Prepared statements of one pooled connection, kept open between checkouts so each distinct SQL string is
+// parsed by the server once per connection instead of once per call.
+// Every statement handed out is tracked: closing it returns a cached statement for reuse (with its parameters,
+// batch and result sets cleared), and anything still open when the connection goes back to the pool is closed
+// there and reported as a leak.
+class StatementCache {
+    private static final Logger logger = Logger.getInstance("database");
+
+    // Statement settings that would carry over to the next borrower; a statement that changed one is not reused
+    private static final Set<String> STICKY_SETTERS = new HashSet<>(Arrays.asList("setFetchSize", "setFetchDirection",
+            "setMaxRows", "setLargeMaxRows", "setMaxFieldSize", "setQueryTimeout", "setEscapeProcessing",
+            "setCursorName", "setPoolable", "closeOnCompletion"));
+
+    // Statistics across all connections
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong uncached = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+    private static final AtomicLong leakedStatements = new AtomicLong();
+    private static final AtomicLong leakedResultSets = new AtomicLong();
+
+    private final Connection raw;
+    private final int maxSize;
+    // Idle and in-use cached statements by SQL key, least recently used first
+    private final LinkedHashMap<String, Handle> cached = new LinkedHashMap<>(16, 0.75f, true);
+    // Statements handed out during the current checkout and not yet closed
+    private final Set<Handle> open = new HashSet<>();
+    private Connection owner;
+
+    StatementCache(Connection raw, int maxSize) {
+        this.raw = raw;
+        this.maxSize = Math.max(0, maxSize);
+    }
+
+    // Called by the connection proxy for prepareStatement, prepareCall and createStatement
+    synchronized Statement create(Connection proxy, Method method, Object[] args) throws SQLException {
+        owner = proxy;
+        String key = cacheKey(method, args);
+        if (key != null && maxSize > 0) {
+            Handle handle = cached.get(key);
+            if (handle != null && !handle.inUse) {
+                hits.incrementAndGet();
+                handle.inUse = true;
+                open.add(handle);
+                return handle.proxy;
+            }
+            if (handle == null) {
+                misses.incrementAndGet();
+                handle = new Handle(key, sqlOf(args), (Statement) invokeRaw(method, args), method.getReturnType());
+                handle.inUse = true;
+                cached.put(key, handle);
+                evictIdleOverLimit();
+                open.add(handle);
+                return handle.proxy;
+            }
+            // The same SQL is already open on this connection; give out a private copy
+        }
+        uncached.incrementAndGet();
+        Handle handle = new Handle(null, sqlOf(args), (Statement) invokeRaw(method, args), method.getReturnType());
+        handle.inUse = true;
+        open.add(handle);
+        return handle.proxy;
+    }
+
+    // Only the plain forms are cached; the others set result set types or key columns that rarely repeat
+    private static String cacheKey(Method method, Object[] args) {
+        if (!"prepareStatement".equals(method.getName()) || args == null) {
+            return null;
+        }
+        if (args.length == 1) {
+            return (String) args[0];
+        }
+        if (args.length == 2 && args[1] instanceof Integer) {
+            return args[1] + "\u0000" + args[0];
+        }
+        return null;
+    }
+
+    private static String sqlOf(Object[] args) {
+        return args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : "(plain statement)";
+    }
+
+    private Object invokeRaw(Method method, Object[] args) throws SQLException {
+        try {
+            return method.invoke(raw, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    private void evictIdleOverLimit() {
+        Iterator<Handle> it = cached.values().iterator();
+        while (cached.size() > maxSize && it.hasNext()) {
+            Handle eldest = it.next();
+            if (eldest.inUse) {
+                // Closed physically when its caller closes it
+                eldest.key = null;
+            } else {
+                eldest.closePhysically();
+            }
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    // Called when the connection goes back to the pool: close whatever the borrower left open
+    synchronized void checkIn() {
+        if (open.isEmpty()) {
+            return;
+        }
+        for (Handle handle : new ArrayList<>(open)) {
+            leakedStatements.incrementAndGet();
+            int resultSets = handle.openResultSets();
+            leakedResultSets.addAndGet(resultSets);
+            logger.error("Statement left open when its connection was returned ({} open result sets): {}",
+                    resultSets, handle.sql());
+            handle.release();
+        }
+        open.clear();
+    }
+
+    // Called before the physical connection closes
+    synchronized void closeAll() {
+        for (Handle handle : cached.values()) {
+            handle.closePhysically();
+        }
+        cached.clear();
+        for (Handle handle : open) {
+            handle.closePhysically();
+        }
+        open.clear();
+    }
+
+    private synchronized void closed(Handle handle) {
+        open.remove(handle);
+        handle.inUse = false;
+        boolean current = handle.key != null && cached.get(handle.key) == handle;
+        if (!current || handle.dirty) {
+            if (current) {
+                cached.remove(handle.key);
+            }
+            handle.closePhysically();
+            return;
+        }
+        try {
+            handle.resetForReuse();
+        } catch (SQLException e) {
+            cached.remove(handle.key);
+            handle.closePhysically();
+        }
+    }
+
+    // Statistics
+    static double getHitRatio() {
+        long requests = hits.get() + misses.get();
+        return requests == 0 ? 0.0 : (double) hits.get() / requests;
+    }
+
+    static long getLeakedStatements() {
+        return leakedStatements.get();
+    }
+
+    static String getStats() {
+        return String.format("hits=%d, misses=%d, hitRatio=%.1f%%, uncached=%d, evictions=%d, leakedStatements=%d, " +
+                        "leakedResultSets=%d", hits.get(), misses.get(), getHitRatio() * 100, uncached.get(),
+                evictions.get(), leakedStatements.get(), leakedResultSets.get());
+    }
+
+    // One physical statement and the proxy callers see; closing the proxy is what returns it to the cache
+    private class Handle implements InvocationHandler {
+        private String key;
+        private final String sql;
+        private final Statement statement;
+        private final Statement proxy;
+        private final List<ResultSet> resultSets = new ArrayList<>(2);
+        private boolean inUse;
+        private boolean dirty;
+
+        Handle(String key, String sql, Statement statement, Class<?> type) {
+            this.key = key;
+            this.sql = sql;
+            this.statement = statement;
+            this.proxy = (Statement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                    new Class<?>[]{type}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name)) {
+                if (inUse) {
+                    release();
+                }
+                return null;
+            }
+            if ("isClosed".equals(name)) {
+                return !inUse || statement.isClosed();
+            }
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(name)) {
+                return "CachedStatement[" + statement + "]";
+            }
+            if (!inUse) {
+                throw new SQLException("Statement has already been closed");
+            }
+            if ("getConnection".equals(name)) {
+                return owner;
+            }
+            if (STICKY_SETTERS.contains(name)) {
+                dirty = true;
+            }
+            Object result;
+            try {
+                result = method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof ResultSet) {
+                resultSets.add((ResultSet) result);
+            }
+            return result;
+        }
+
+        void release() {
+            closed(this);
+        }
+
+        int openResultSets() {
+            int count = 0;
+            for (ResultSet rs : resultSets) {
+                try {
+                    if (!rs.isClosed()) {
+                        count++;
+                    }
+                } catch (SQLException e) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        void resetForReuse() throws SQLException {
+            for (ResultSet rs : resultSets) {
+                rs.close();
+            }
+            resultSets.clear();
+            if (statement instanceof PreparedStatement) {
+                ((PreparedStatement) statement).clearParameters();
+            }
+            statement.clearBatch();
+            statement.clearWarnings();
+        }
+
+        void closePhysically() {
+            resultSets.clear();
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                logger.error("Error closing statement", e);
+            }
+        }
+
+        String sql() {
+            return sql;
+        }
+    }
+}
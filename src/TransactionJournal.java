@@ -0,0 +1,328 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Append-only binary journal of catalog and loan events, written as fixed-size records to segment files
+public class TransactionJournal {
+    private static final Logger logger = Logger.getInstance("journal");
+    private static TransactionJournal instance;
+
+    static final String JOURNAL_DIRECTORY = "logs/journal";
+    static final String SEGMENT_PREFIX = "journal-";
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    // Record layout (big-endian), RECORD_SIZE bytes:
+    //   0  long  offset        (journal-wide sequence number)
+    //   8  long  timestamp     (epoch millis)
+    //  16  byte  event type
+    //  17  3     reserved
+    //  20  int   book id
+    //  24  int   member id
+    //  28  int   borrow id
+    //  32  long  amount        (fine in cents, copies or new due date millis, depending on type)
+    //  40  int   reserved
+    //  44  int   CRC32 of bytes 0..43
+    static final int RECORD_SIZE = 48;
+    static final int CRC_POSITION = 44;
+    static final long RECORDS_PER_SEGMENT = 1L << 20;
+
+    public enum EventType {
+        BOOK_ADDED(1), BOOK_UPDATED(2), BOOK_DELETED(3), BORROW(4), RETURN(5), FINE_ACCRUED(6), RENEWAL(7);
+
+        final byte code;
+
+        EventType(int code) {
+            this.code = (byte) code;
+        }
+
+        static EventType fromCode(byte code) {
+            for (EventType type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    public static class Event {
+        private final long offset;
+        private final long timestamp;
+        private final EventType type;
+        private final int bookId;
+        private final int memberId;
+        private final int borrowId;
+        private final long amount;
+
+        Event(long offset, long timestamp, EventType type, int bookId, int memberId, int borrowId, long amount) {
+            this.offset = offset;
+            this.timestamp = timestamp;
+            this.type = type;
+            this.bookId = bookId;
+            this.memberId = memberId;
+            this.borrowId = borrowId;
+            this.amount = amount;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public EventType getType() {
+            return type;
+        }
+
+        public int getBookId() {
+            return bookId;
+        }
+
+        public int getMemberId() {
+            return memberId;
+        }
+
+        public int getBorrowId() {
+            return borrowId;
+        }
+
+        public long getAmount() {
+            return amount;
+        }
+
+        @Override
+        public String toString() {
+            return "Event{" +
+                    "offset=" + offset +
+                    ", timestamp=" + timestamp +
+                    ", type=" + type +
+                    ", bookId=" + bookId +
+                    ", memberId=" + memberId +
+                    ", borrowId=" + borrowId +
+                    ", amount=" + amount +
+                    '}';
+        }
+    }
+
+    private final File directory;
+    private final ByteBuffer pending;
+    private final CRC32 crc = new CRC32();
+    private final ScheduledExecutorService flusher;
+    private FileChannel segment;
+    private long segmentBase;
+    private long nextOffset;
+    private boolean dirty;
+    private boolean closed;
+
+    private TransactionJournal(File directory, int bufferRecords, long fsyncIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.pending = ByteBuffer.allocateDirect(bufferRecords * RECORD_SIZE);
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        recover();
+
+        // Group commit: everything appended since the last tick is written and fsynced together
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "lms-journal-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::sync, fsyncIntervalMillis, fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Null when the journal is disabled (-Dlms.journal.enabled=false) or could not be opened
+    public static synchronized TransactionJournal getInstance() {
+        if (instance == null && Boolean.parseBoolean(System.getProperty("lms.journal.enabled", "true"))) {
+            try {
+                instance = new TransactionJournal(new File(JOURNAL_DIRECTORY),
+                        Integer.getInteger("lms.journal.bufferRecords", 1024),
+                        Long.getLong("lms.journal.fsyncIntervalMillis", 100));
+                Runtime.getRuntime().addShutdownHook(new Thread(instance::close, "lms-journal-shutdown"));
+            } catch (IOException e) {
+                logger.error("Failed to open transaction journal", e);
+            }
+        }
+        return instance;
+    }
+
+    // Convenience for callers that should not care whether journaling is enabled
+    public static void record(EventType type, int bookId, int memberId, int borrowId, long amount) {
+        TransactionJournal journal = getInstance();
+        if (journal != null) {
+            journal.append(type, bookId, memberId, borrowId, amount);
+        }
+    }
+
+    // Reopen the newest segment and drop any torn record left by a crash
+    private void recover() throws IOException {
+        File[] segments = listSegments(directory);
+        if (segments.length == 0) {
+            openSegment(0);
+            return;
+        }
+        File last = segments[segments.length - 1];
+        long base = parseBase(last);
+        try (FileChannel channel = FileChannel.open(last.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long records = channel.size() / RECORD_SIZE;
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            while (records > 0) {
+                record.clear();
+                channel.read(record, (records - 1) * RECORD_SIZE);
+                if (decode(record, 0) != null) {
+                    break;
+                }
+                records--;
+            }
+            channel.truncate(records * RECORD_SIZE);
+            channel.force(true);
+            nextOffset = base + records;
+        }
+        openSegment(base);
+        if (nextOffset - segmentBase >= RECORDS_PER_SEGMENT) {
+            rollSegment();
+        }
+        logger.info("Transaction journal opened at offset {}", nextOffset);
+    }
+
+    private void openSegment(long base) throws IOException {
+        segmentBase = base;
+        if (nextOffset < base) {
+            nextOffset = base;
+        }
+        segment = FileChannel.open(segmentFile(directory, base).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void rollSegment() throws IOException {
+        segment.force(true);
+        segment.close();
+        openSegment(nextOffset);
+    }
+
+    // Returns the offset assigned to the event, or -1 if the journal is closed
+    public synchronized long append(EventType type, int bookId, int memberId, int borrowId, long amount) {
+        if (closed) {
+            return -1;
+        }
+        try {
+            if (!pending.hasRemaining()) {
+                writePending();
+            }
+            if (nextOffset - segmentBase >= RECORDS_PER_SEGMENT) {
+                writePending();
+                rollSegment();
+            }
+            long offset = nextOffset++;
+            int start = pending.position();
+            pending.putLong(offset)
+                    .putLong(System.currentTimeMillis())
+                    .put(type.code)
+                    .put((byte) 0).put((byte) 0).put((byte) 0)
+                    .putInt(bookId)
+                    .putInt(memberId)
+                    .putInt(borrowId)
+                    .putLong(amount)
+                    .putInt(0);
+            crc.reset();
+            for (int i = start; i < start + CRC_POSITION; i++) {
+                crc.update(pending.get(i));
+            }
+            pending.putInt((int) crc.getValue());
+            dirty = true;
+            return offset;
+        } catch (IOException e) {
+            logger.error("Failed to append to transaction journal", e);
+            return -1;
+        }
+    }
+
+    private void writePending() throws IOException {
+        pending.flip();
+        while (pending.hasRemaining()) {
+            segment.write(pending);
+        }
+        pending.clear();
+    }
+
+    // Write buffered records and fsync them as one group
+    public synchronized void sync() {
+        if (closed || !dirty) {
+            return;
+        }
+        try {
+            writePending();
+            segment.force(false);
+            dirty = false;
+        } catch (IOException e) {
+            logger.error("Failed to sync transaction journal", e);
+        }
+    }
+
+    public synchronized long getNextOffset() {
+        return nextOffset;
+    }
+
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            sync();
+            closed = true;
+            try {
+                segment.close();
+            } catch (IOException e) {
+                logger.error("Failed to close transaction journal", e);
+            }
+        }
+    }
+
+    // Decode and verify the record at the given position; null if it is torn or blank
+    static Event decode(ByteBuffer buffer, int position) {
+        CRC32 check = new CRC32();
+        for (int i = position; i < position + CRC_POSITION; i++) {
+            check.update(buffer.get(i));
+        }
+        if ((int) check.getValue() != buffer.getInt(position + CRC_POSITION)) {
+            return null;
+        }
+        EventType type = EventType.fromCode(buffer.get(position + 16));
+        if (type == null) {
+            return null;
+        }
+        return new Event(buffer.getLong(position), buffer.getLong(position + 8), type,
+                buffer.getInt(position + 20), buffer.getInt(position + 24), buffer.getInt(position + 28),
+                buffer.getLong(position + 32));
+    }
+
+    static File[] listSegments(File directory) {
+        File[] segments = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (segments == null) {
+            return new File[0];
+        }
+        Arrays.sort(segments, (a, b) -> Long.compare(parseBase(a), parseBase(b)));
+        return segments;
+    }
+
+    static File segmentFile(File directory, long base) {
+        return new File(directory, SEGMENT_PREFIX + String.format("%020d", base) + SEGMENT_SUFFIX);
+    }
+
+    static long parseBase(File segment) {
+        String name = segment.getName();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
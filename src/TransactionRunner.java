@@ -0,0 +1,188 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+// Runs a unit of work in its own transaction, retrying it when MySQL picks it as a deadlock victim (1213)
+// or it times out waiting for a row lock (1205).
+// Every attempt starts from a rolled-back transaction, so work is idempotent as long as it keeps its state local
+// to the attempt and leaves side effects (cache invalidation, journal records) until after execute returns.
+// A failed commit is never retried: the server may have applied it, and running the work again could do it twice.
+public class TransactionRunner {
+    private static final Logger logger = Logger.getInstance("database");
+
+    private final RetryConfig config;
+    private final Map<String, OperationStats> stats = new ConcurrentHashMap<>();
+
+    public TransactionRunner(RetryConfig config) {
+        this.config = config;
+    }
+
+    public static TransactionRunner fromSystemProperties() {
+        return new TransactionRunner(RetryConfig.fromSystemProperties());
+    }
+
+    public <T> T execute(String operation, Work<T> work) throws SQLException {
+        return execute(operation, work, result -> true);
+    }
+
+    // Runs work and commits when shouldCommit accepts its result, otherwise rolls back; SQL errors that are not
+    // retryable, or that outlast the retry budget, are rethrown after rollback
+    public <T> T execute(String operation, Work<T> work, Predicate<T> shouldCommit) throws SQLException {
+        OperationStats opStats = stats.computeIfAbsent(operation, name -> new OperationStats());
+        long start = System.currentTimeMillis();
+        for (int attempt = 1; ; attempt++) {
+            opStats.attempts.incrementAndGet();
+            Connection conn = null;
+            boolean committing = false;
+            try {
+                conn = DBConnection.getConnection();
+                conn.setAutoCommit(false);
+                T result = work.run(conn);
+                if (shouldCommit.test(result)) {
+                    committing = true;
+                    conn.commit();
+                } else {
+                    conn.rollback();
+                }
+                opStats.completed.incrementAndGet();
+                return result;
+            } catch (SQLException e) {
+                rollbackQuietly(conn);
+                if (committing || !isRetryable(e)) {
+                    opStats.failed.incrementAndGet();
+                    throw e;
+                }
+                long elapsed = System.currentTimeMillis() - start;
+                if (attempt >= config.maxAttempts || elapsed >= config.maxElapsedMillis) {
+                    opStats.exhausted.incrementAndGet();
+                    logger.error("Giving up on {} after {} attempts", operation, attempt);
+                    throw e;
+                }
+                opStats.retries.incrementAndGet();
+                long delay = backoffMillis(attempt);
+                int failedAttempt = attempt;
+                logger.debug(() -> "Retrying " + operation + " in " + delay + "ms after attempt " + failedAttempt +
+                        ": " + e.getMessage());
+                sleep(delay);
+            } finally {
+                closeQuietly(conn);
+            }
+        }
+    }
+
+    // Full jitter: a random delay up to the exponential bound, so colliding transactions spread out
+    private long backoffMillis(int attempt) {
+        long bound = Math.min(config.maxBackoffMillis, config.baseBackoffMillis << Math.min(20, attempt - 1));
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    // Deadlock victims and lock wait timeouts; 40001 covers drivers that only report the SQL state
+    static boolean isRetryable(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException) {
+                SQLException sqlException = (SQLException) t;
+                if (sqlException.getErrorCode() == 1213 || sqlException.getErrorCode() == 1205
+                        || "40001".equals(sqlException.getSQLState())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void sleep(long millis) throws SQLException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting to retry", e);
+        }
+    }
+
+    private static void rollbackQuietly(Connection conn) {
+        try {
+            if (conn != null) {
+                conn.rollback();
+            }
+        } catch (SQLException ex) {
+            logger.error("Error rolling back transaction", ex);
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            if (conn != null) {
+                conn.setAutoCommit(true);
+                conn.close();
+            }
+        } catch (SQLException e) {
+            logger.error("Error closing connection", e);
+        }
+    }
+
+    // Statistics
+    public long getRetryCount(String operation) {
+        OperationStats opStats = stats.get(operation);
+        return opStats == null ? 0 : opStats.retries.get();
+    }
+
+    public long getExhaustedCount(String operation) {
+        OperationStats opStats = stats.get(operation);
+        return opStats == null ? 0 : opStats.exhausted.get();
+    }
+
+    public String getStats() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, OperationStats> entry : new TreeMap<>(stats).entrySet()) {
+            OperationStats opStats = entry.getValue();
+            if (sb.length() > 0) {
+                sb.append("; ");
+            }
+            sb.append(String.format("%s: attempts=%d, completed=%d, retries=%d, exhausted=%d, failed=%d",
+                    entry.getKey(), opStats.attempts.get(), opStats.completed.get(), opStats.retries.get(),
+                    opStats.exhausted.get(), opStats.failed.get()));
+        }
+        return sb.toString();
+    }
+
+    public void logStats() {
+        logger.info("Transactions: {}", getStats());
+    }
+
+    public interface Work<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    private static class OperationStats {
+        private final AtomicLong attempts = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        // Still conflicting when the retry budget ran out
+        private final AtomicLong exhausted = new AtomicLong();
+        // Non-retryable errors, including failed commits
+        private final AtomicLong failed = new AtomicLong();
+    }
+
+    public static class RetryConfig {
+        int maxAttempts = 5;
+        long baseBackoffMillis = 10;
+        long maxBackoffMillis = 500;
+        long maxElapsedMillis = 3000;
+
+        // Each setting can be overridden with -Dlms.txRetry.<name>=<value>; maxAttempts=1 disables retries
+        static RetryConfig fromSystemProperties() {
+            RetryConfig config = new RetryConfig();
+            config.maxAttempts = Math.max(1, Integer.getInteger("lms.txRetry.maxAttempts", config.maxAttempts));
+            config.baseBackoffMillis = Math.max(1, Long.getLong("lms.txRetry.baseBackoffMillis", config.baseBackoffMillis));
+            config.maxBackoffMillis = Math.max(config.baseBackoffMillis,
+                    Long.getLong("lms.txRetry.maxBackoffMillis", config.maxBackoffMillis));
+            config.maxElapsedMillis = Math.max(0, Long.getLong("lms.txRetry.maxElapsedMillis", config.maxElapsedMillis));
+            return config;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Trigram index over search terms, used to find close spellings of a misspelled word.
+// Trigrams are hashed into a fixed number of buckets so the table never grows with the vocabulary;
+// collisions only add candidates, which the edit distance check then rejects.
+// Not thread-safe: BookSearchIndex guards it with its own lock.
+public class TrigramTermIndex {
+    private static final int BUCKET_BITS = 18;
+    private static final int BUCKETS = 1 << BUCKET_BITS;
+    private static final int MAX_TERM_LENGTH = 32;
+    // Candidate lists this size or larger are scored in parallel
+    private static final int PARALLEL_THRESHOLD = 2048;
+    // Upper bound on edit distance computations per word
+    private static final int MAX_SCORED_CANDIDATES = 2048;
+
+    public static class Match {
+        final int termId;
+        final int distance;
+
+        Match(int termId, int distance) {
+            this.termId = termId;
+            this.distance = distance;
+        }
+    }
+
+    private final int[][] buckets = new int[BUCKETS][];
+    private final int[] bucketSizes = new int[BUCKETS];
+    private final List<String> terms;
+
+    // Shares the term list of the owning index; term ids are positions in that list
+    public TrigramTermIndex(List<String> terms) {
+        this.terms = terms;
+    }
+
+    public void add(int termId) {
+        String term = terms.get(termId);
+        if (term.length() > MAX_TERM_LENGTH) {
+            return;
+        }
+        for (int bucket : trigramBuckets(term)) {
+            int[] ids = buckets[bucket];
+            int size = bucketSizes[bucket];
+            if (ids == null) {
+                ids = buckets[bucket] = new int[4];
+            } else if (size == ids.length) {
+                ids = buckets[bucket] = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size] = termId;
+            bucketSizes[bucket] = size + 1;
+        }
+    }
+
+    // Edit budget by word length: short words must match exactly
+    static int maxEdits(int length) {
+        return length <= 2 ? 0 : length <= 5 ? 1 : 2;
+    }
+
+    // Terms within the edit budget of the word, closest first, at most limit of them
+    public List<Match> lookup(String word, int limit) {
+        int maxEdits = maxEdits(word.length());
+        if (word.length() > MAX_TERM_LENGTH) {
+            return new ArrayList<>();
+        }
+        int[] grams = trigramBuckets(word);
+        // Each edit destroys at most three trigrams (the q-gram lemma)
+        int minShared = Math.max(1, grams.length - 3 * maxEdits);
+
+        // Shared trigram counts per touched term, found through a small open-addressed table of touched
+        // positions; memory and time stay proportional to the postings read, not to the vocabulary
+        int[] touched = new int[64];
+        int[] shared = new int[64];
+        int touchedCount = 0;
+        int[] slots = new int[128];
+        for (int bucket : grams) {
+            int[] ids = buckets[bucket];
+            for (int i = 0; i < bucketSizes[bucket]; i++) {
+                int termId = ids[i];
+                int mask = slots.length - 1;
+                int slot = (termId * 0x9E3779B1) >>> 7 & mask;
+                while (slots[slot] != 0 && touched[slots[slot] - 1] != termId) {
+                    slot = (slot + 1) & mask;
+                }
+                if (slots[slot] != 0) {
+                    shared[slots[slot] - 1]++;
+                    continue;
+                }
+                if (touchedCount == touched.length) {
+                    touched = Arrays.copyOf(touched, touchedCount * 2);
+                    shared = Arrays.copyOf(shared, touchedCount * 2);
+                }
+                touched[touchedCount] = termId;
+                shared[touchedCount] = 1;
+                slots[slot] = ++touchedCount;
+                // Keep the table at most half full
+                if (touchedCount * 2 > slots.length) {
+                    slots = rehash(touched, touchedCount, slots.length * 2);
+                }
+            }
+        }
+
+        int candidateCount = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int termId = touched[i];
+            if (shared[i] >= minShared
+                    && Math.abs(terms.get(termId).length() - word.length()) <= maxEdits) {
+                shared[candidateCount] = shared[i];
+                touched[candidateCount++] = termId;
+            }
+        }
+
+        // Only the terms sharing the most trigrams go on to the edit distance check
+        if (candidateCount > MAX_SCORED_CANDIDATES) {
+            int[] histogram = new int[grams.length + 1];
+            for (int i = 0; i < candidateCount; i++) {
+                histogram[shared[i]]++;
+            }
+            int cutoff = grams.length;
+            for (int kept = histogram[cutoff]; cutoff > minShared && kept + histogram[cutoff - 1] <= MAX_SCORED_CANDIDATES; ) {
+                kept += histogram[--cutoff];
+            }
+            int kept = 0;
+            for (int i = 0; i < candidateCount && kept < MAX_SCORED_CANDIDATES; i++) {
+                if (shared[i] >= cutoff) {
+                    touched[kept++] = touched[i];
+                }
+            }
+            candidateCount = kept;
+        }
+
+        IntStream candidates = Arrays.stream(touched, 0, candidateCount);
+        if (candidateCount >= PARALLEL_THRESHOLD) {
+            candidates = candidates.parallel();
+        }
+        return candidates
+                .mapToObj(termId -> new Match(termId, distance(word, terms.get(termId), maxEdits)))
+                .filter(match -> match.distance <= maxEdits)
+                .sorted(Comparator.<Match>comparingInt(match -> match.distance).thenComparingInt(match -> match.termId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    // Table of touched positions (1-based, 0 = empty) keyed by term id
+    private static int[] rehash(int[] touched, int touchedCount, int size) {
+        int[] slots = new int[size];
+        int mask = size - 1;
+        for (int i = 0; i < touchedCount; i++) {
+            int slot = (touched[i] * 0x9E3779B1) >>> 7 & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+        }
+        return slots;
+    }
+
+    // Padded trigrams ("  ab", " ab", "ab ") hashed to buckets, duplicates removed
+    private static int[] trigramBuckets(String term) {
+        String padded = "  " + term + " ";
+        int[] grams = new int[padded.length() - 2];
+        for (int i = 0; i < grams.length; i++) {
+            int hash = padded.charAt(i) * 961 + padded.charAt(i + 1) * 31 + padded.charAt(i + 2);
+            hash ^= hash >>> BUCKET_BITS;
+            grams[i] = (hash * 0x9E3779B1 >>> (32 - BUCKET_BITS));
+        }
+        Arrays.sort(grams);
+        int unique = 0;
+        for (int i = 0; i < grams.length; i++) {
+            if (i == 0 || grams[i] != grams[i - 1]) {
+                grams[unique++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, unique);
+    }
+
+    // Optimal string alignment distance (adjacent transpositions count once), or limit + 1 once it is exceeded
+    static int distance(String a, String b, int limit) {
+        int n = a.length();
+        int m = b.length();
+        if (Math.abs(n - m) > limit) {
+            return limit + 1;
+        }
+        int[] before = new int[m + 1];
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= n; i++) {
+            current[0] = i;
+            int rowMin = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= m; j++) {
+                char cb = b.charAt(j - 1);
+                int cost = ca == cb ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && ca == b.charAt(j - 2) && a.charAt(i - 2) == cb) {
+                    value = Math.min(value, before[j - 2] + 1);
+                }
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (rowMin > limit) {
+                return limit + 1;
+            }
+            int[] recycled = before;
+            before = previous;
+            previous = current;
+            current = recycled;
+        }
+        return previous[m];
+    }
+}
@@ -2,7 +2,7 @@ import java.util.regex.Pattern;
 import java.time.Year;
 
 public class ValidationUtils {
-    private static final Logger logger = Logger.getInstance();
+    private static final Logger logger = Logger.getInstance("validation");
     
     // Email validation pattern
     private static final Pattern EMAIL_PATTERN = 
@@ -18,48 +18,52 @@ public class ValidationUtils {
     
     // Book validation
     public static boolean validateBook(Book book) {
+        String problem = checkBook(book);
+        if (problem != null) {
+            logger.error("Book validation failed: {}", problem);
+            return false;
+        }
+        return true;
+    }
+    
+    // Same rules as validateBook, returning the reason instead of logging it (null when the book is valid)
+    public static String checkBook(Book book) {
         try {
             // Title validation
             if (book.getTitle() == null || book.getTitle().trim().isEmpty()) {
-                logger.error("Book validation failed: Title cannot be empty");
-                return false;
+                return "Title cannot be empty";
             }
             
             // Author validation
             if (book.getAuthor() == null || book.getAuthor().trim().isEmpty()) {
-                logger.error("Book validation failed: Author cannot be empty");
-                return false;
+                return "Author cannot be empty";
             }
             
             // Year validation
             int currentYear = Year.now().getValue();
             if (book.getYear() <= 0 || book.getYear() > currentYear) {
-                logger.error("Book validation failed: Invalid year - " + book.getYear());
-                return false;
+                return "Invalid year - " + book.getYear();
             }
             
             // ISBN validation (if provided)
             String isbn = book.getIsbn();
             if (isbn != null && !isbn.trim().isEmpty() && !ISBN_PATTERN.matcher(isbn).matches()) {
-                logger.error("Book validation failed: Invalid ISBN format - " + isbn);
-                return false;
+                return "Invalid ISBN format - " + isbn;
             }
             
             // Copies validation
             if (book.getTotalCopies() <= 0) {
-                logger.error("Book validation failed: Total copies must be positive");
-                return false;
+                return "Total copies must be positive";
             }
             
             if (book.getAvailableCopies() < 0 || book.getAvailableCopies() > book.getTotalCopies()) {
-                logger.error("Book validation failed: Available copies must be between 0 and total copies");
-                return false;
+                return "Available copies must be between 0 and total copies";
             }
             
-            return true;
+            return null;
         } catch (Exception e) {
             logger.error("Book validation error", e);
-            return false;
+            return "Validation error - " + e.getMessage();
         }
     }
     
@@ -75,14 +79,14 @@ public class ValidationUtils {
             // Email validation
             String email = member.getEmail();
             if (email == null || !EMAIL_PATTERN.matcher(email).matches()) {
-                logger.error("Member validation failed: Invalid email format - " + email);
+                logger.error("Member validation failed: Invalid email format - {}", email);
                 return false;
             }
             
             // Phone validation (if provided)
             String phone = member.getPhone();
             if (phone != null && !phone.trim().isEmpty() && !PHONE_PATTERN.matcher(phone).matches()) {
-                logger.error("Member validation failed: Invalid phone format - " + phone);
+                logger.error("Member validation failed: Invalid phone format - {}", phone);
                 return false;
             }
             
@@ -144,19 +148,19 @@ public class ValidationUtils {
     public static boolean canMemberBorrow(Member member, DatabaseManager dbManager) {
         // Check if member is active
         if (!member.isActive()) {
-            logger.info("Member cannot borrow: Inactive membership - " + member.getName());
+            logger.info("Member cannot borrow: Inactive membership - {}", member.getName());
             return false;
         }
         
         // Check if member has fines
         if (member.getFineAmount() > 0) {
-            logger.info("Member cannot borrow: Has unpaid fines - " + member.getName());
+            logger.info("Member cannot borrow: Has unpaid fines - {}", member.getName());
             return false;
         }
         
         // Check if member has reached maximum books limit
         if (member.getCurrentBorrowCount() >= member.getMaxBooksAllowed()) {
-            logger.info("Member cannot borrow: Maximum books limit reached - " + member.getName());
+            logger.info("Member cannot borrow: Maximum books limit reached - {}", member.getName());
             return false;
         }
         
@@ -166,7 +170,7 @@ public class ValidationUtils {
     // Check if a book can be borrowed
     public static boolean canBookBeBorrowed(Book book) {
         if (!book.isAvailable() || book.getAvailableCopies() <= 0) {
-            logger.info("Book cannot be borrowed: Not available - " + book.getTitle());
+            logger.info("Book cannot be borrowed: Not available - {}", book.getTitle());
             return false;
         }
         return true;